@@ -0,0 +1,212 @@
+package fitnesstracker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Compact binary storage for users, used as an alternative to the CSV layout.
+ *
+ * File layout (all numbers big-endian):
+ *   magic "FTRK", u16 version,
+ *   i32 dictionary size, dictionary strings (exercise names),
+ *   i32 user count, then one length-prefixed record per user.
+ * Each record holds the profile, goals, the history as (i32 nameId, f64 calories, i64 timestamp)
+ * triples and the water records as (i64 epochSecond, i32 nano, i32 amount).
+ */
+public class BinaryDataFormat {
+    static final byte[] MAGIC = {'F', 'T', 'R', 'K'};
+    static final int VERSION = 1;
+
+    private static final int NO_STRING = -1;
+
+    // Returns true if the file starts with the binary magic header
+    public static boolean isBinaryFile(File file) throws IOException {
+        if (!file.exists() || file.length() < MAGIC.length) return false;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] head = new byte[MAGIC.length];
+            int n = in.readNBytes(head, 0, head.length);
+            if (n < head.length) return false;
+            for (int i = 0; i < head.length; i++) if (head[i] != MAGIC[i]) return false;
+            return true;
+        }
+    }
+
+    public static void saveUsers(List<User> users, File file) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            saveUsers(users, os);
+        }
+    }
+
+    public static void saveUsers(List<User> users, OutputStream os) throws IOException {
+        // Build the per-file exercise name dictionary first so records only carry ids.
+        // Catalog ids are not stable across runs, so the file maps its own ids to names.
+        int[] fileIds = new int[ExerciseCatalog.size()];
+        Arrays.fill(fileIds, NO_STRING);
+        List<String> names = new ArrayList<>();
+        for (User u : users) {
+            for (ExerciseHistory.Cursor c = u.historyCursor(); c.next(); ) {
+                int id = c.exerciseId();
+                if (id != ExerciseCatalog.NO_EXERCISE && fileIds[id] == NO_STRING) {
+                    fileIds[id] = names.size();
+                    names.add(ExerciseCatalog.nameOf(id));
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(names.size());
+        for (String n : names) writeString(out, n);
+        out.writeInt(users.size());
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+        DataOutputStream rec = new DataOutputStream(recordBytes);
+        for (User u : users) {
+            recordBytes.reset();
+            writeString(rec, u.getName());
+            rec.writeInt(u.getAge());
+            rec.writeDouble(u.getWeightKg());
+            rec.writeDouble(u.getHeightCm());
+            writeString(rec, u.getSex());
+            rec.writeInt(u.getDailyCalorieGoal());
+            rec.writeDouble(u.getWeightGoalKg());
+            writeString(rec, u.getAvatarPath());
+            rec.writeInt(u.getDailyWaterGoalMl());
+
+            rec.writeInt(u.getHistorySize());
+            for (ExerciseHistory.Cursor c = u.historyCursor(); c.next(); ) {
+                int id = c.exerciseId();
+                rec.writeInt(id == ExerciseCatalog.NO_EXERCISE ? NO_STRING : fileIds[id]);
+                rec.writeDouble(c.calories());
+                rec.writeLong(c.timestamp());
+            }
+
+            List<WaterRecord> water = u.getWaterRecords();
+            rec.writeInt(water.size());
+            for (WaterRecord wr : water) {
+                LocalDateTime ts = wr.getTimestamp();
+                rec.writeLong(ts.toEpochSecond(ZoneOffset.UTC));
+                rec.writeInt(ts.getNano());
+                rec.writeInt(wr.getAmount());
+            }
+
+            rec.flush();
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+        }
+        out.flush();
+    }
+
+    public static List<User> loadUsers(File file) throws IOException {
+        List<User> users = new ArrayList<>();
+        if (!file.exists()) return users;
+        try (InputStream in = new FileInputStream(file)) {
+            return loadUsers(in);
+        }
+    }
+
+    public static List<User> loadUsers(InputStream is) throws IOException {
+        List<User> users = new ArrayList<>();
+        streamUsers(is, users::add);
+        return users;
+    }
+
+    /**
+     * Read users one record at a time and hand each to the sink as soon as it is decoded.
+     * Returns false if the sink asked to stop.
+     */
+    public static boolean streamUsers(InputStream is, Predicate<User> sink) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+        byte[] head = new byte[MAGIC.length];
+        in.readFully(head);
+        for (int i = 0; i < head.length; i++) {
+            if (head[i] != MAGIC[i]) throw new IOException("Not a binary fitness data file");
+        }
+        int version = in.readUnsignedShort();
+        if (version > VERSION) throw new IOException("Unsupported binary format version: " + version);
+
+        int dictSize = in.readInt();
+        int[] exerciseIds = new int[dictSize];
+        for (int i = 0; i < dictSize; i++) exerciseIds[i] = ExerciseCatalog.idOf(readString(in));
+
+        int count = in.readInt();
+        byte[] buf = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int len = in.readInt();
+            if (len < 0) throw new IOException("Corrupt record length: " + len);
+            if (buf.length < len) buf = new byte[Math.max(len, buf.length * 2)];
+            in.readFully(buf, 0, len);
+            if (!sink.test(readUser(ByteBuffer.wrap(buf, 0, len), exerciseIds))) return false;
+        }
+        return true;
+    }
+
+    private static User readUser(ByteBuffer bb, int[] exerciseIds) throws IOException {
+        try {
+            String name = readString(bb);
+            int age = bb.getInt();
+            double weight = bb.getDouble();
+            double height = bb.getDouble();
+            String sex = readString(bb);
+            User user = new User(name, age, weight, height, sex);
+            user.setDailyCalorieGoal(bb.getInt());
+            user.setWeightGoalKg(bb.getDouble());
+            user.setAvatarPath(readString(bb));
+            user.setDailyWaterGoalMl(bb.getInt());
+
+            int historySize = bb.getInt();
+            for (int i = 0; i < historySize; i++) {
+                int id = bb.getInt();
+                double cal = bb.getDouble();
+                long ts = bb.getLong();
+                user.addExerciseEntry(id == NO_STRING ? ExerciseCatalog.NO_EXERCISE : exerciseIds[id], cal, ts);
+            }
+
+            int waterSize = bb.getInt();
+            List<WaterRecord> water = new ArrayList<>(waterSize);
+            for (int i = 0; i < waterSize; i++) {
+                long sec = bb.getLong();
+                int nano = bb.getInt();
+                int amount = bb.getInt();
+                water.add(new WaterRecord(amount, LocalDateTime.ofEpochSecond(sec, nano, ZoneOffset.UTC)));
+            }
+            user.setWaterRecords(water);
+            // any trailing bytes belong to newer format revisions and are skipped
+            return user;
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt user record", ex);
+        }
+    }
+
+    // Strings are stored as i32 byte length (-1 for null) followed by UTF-8 bytes
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) { out.writeInt(NO_STRING); return; }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len == NO_STRING) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer bb) {
+        int len = bb.getInt();
+        if (len == NO_STRING) return null;
+        String s = new String(bb.array(), bb.arrayOffset() + bb.position(), len, StandardCharsets.UTF_8);
+        bb.position(bb.position() + len);
+        return s;
+    }
+}
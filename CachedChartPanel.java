@@ -0,0 +1,168 @@
+package fitnesstracker;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class for the custom-painted charts (ChartWindow, ProgressWindow).
+ *
+ * The chart is rendered into an offscreen image that is kept until the data or the panel size
+ * changes, so expose events and repaints from other windows just copy the image. Subclasses call
+ * dataChanged() when their data changes, optionally with the region that actually changed; only
+ * that part of the image is redrawn and repainted.
+ * On a resize every layer moves, so the whole chart is redrawn once per frame into the same
+ * (oversized) image; ChartRenderBenchmark measures the frame rate for resizes, exposes and updates.
+ *
+ * Fonts and colours shared by the charts are constants here, and text is laid out once into
+ * glyph vectors (see Text) and reused across repaints and resizes.
+ * A BufferedImage rather than a VolatileImage: Swing already paints through an accelerated back
+ * buffer, and a BufferedImage cannot lose its contents.
+ */
+public abstract class CachedChartPanel extends JPanel {
+    protected static final Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 16);
+    protected static final Font MESSAGE_FONT = new Font("SansSerif", Font.PLAIN, 14);
+    protected static final Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 12);
+    protected static final Color TEXT_COLOR = new Color(28, 60, 60);
+    protected static final Color CHART_BACKGROUND = new Color(0xF3FBF8);
+    // translucent white plot area, pre-blended over the chart background: an opaque fill is about
+    // twice as fast to draw, which matters when the whole chart is redrawn on every resize frame
+    protected static final Color PLOT_BACKGROUND = over(new Color(255, 255, 255, 200), CHART_BACKGROUND);
+
+    // matches the antialiasing hint set in prepare()
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, false);
+    // text caches are dropped when they grow past this (labels of many data versions)
+    private static final int MAX_CACHED_TEXT = 1024;
+    // measures label candidates (e.g. while shortening a name) without going through the caches
+    private static final FontMetrics LABEL_METRICS = metrics(LABEL_FONT);
+
+    private final Map<String, Text> titleText = new HashMap<>();
+    private final Map<String, Text> labelText = new HashMap<>();
+    private final Map<String, Text> messageText = new HashMap<>();
+
+    private BufferedImage image;
+    // size the image was last rendered for; the image itself may be larger
+    private int width, height;
+    // part of the image that must be redrawn; null when the image is up to date
+    private Rectangle dirty;
+
+    protected CachedChartPanel() {
+        setBackground(CHART_BACKGROUND);
+        setOpaque(true);
+    }
+
+    // Draw the whole chart; g may be clipped to the region being redrawn
+    protected abstract void renderChart(Graphics2D g, int width, int height);
+
+    // The data changed everywhere (title, scale, number of bars...)
+    protected void dataChanged() {
+        dirty = new Rectangle(0, 0, getWidth(), getHeight());
+        repaint();
+    }
+
+    // Only the given region of the chart changed
+    protected void dataChanged(Rectangle region) {
+        if (dirty == null) dirty = new Rectangle(region);
+        else dirty = dirty.union(region);
+        repaint(region);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) return;
+        if (w != width || h != height) {
+            // while the window is being resized, keep drawing into the same (larger) image
+            if (image == null || image.getWidth() < w || image.getHeight() < h) {
+                int iw = Math.max(w + w / 4, image == null ? 0 : image.getWidth());
+                int ih = Math.max(h + h / 4, image == null ? 0 : image.getHeight());
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                image = gc != null ? gc.createCompatibleImage(iw, ih, Transparency.OPAQUE)
+                        : new BufferedImage(iw, ih, BufferedImage.TYPE_INT_RGB);
+            }
+            width = w;
+            height = h;
+            dirty = new Rectangle(0, 0, w, h);
+        }
+        if (dirty != null) {
+            Rectangle r = dirty.intersection(new Rectangle(0, 0, w, h));
+            dirty = null;
+            if (!r.isEmpty()) {
+                Graphics2D ig = image.createGraphics();
+                ig.setClip(r);
+                ig.setColor(getBackground());
+                ig.fillRect(r.x, r.y, r.width, r.height);
+                prepare(ig);
+                renderChart(ig, w, h);
+                ig.dispose();
+            }
+        }
+        g.drawImage(image, 0, 0, w, h, 0, 0, w, h, null);
+    }
+
+    private static void prepare(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    // Colour of translucent 'top' drawn over opaque 'bottom'
+    private static Color over(Color top, Color bottom) {
+        float a = top.getAlpha() / 255f;
+        return new Color(Math.round(top.getRed() * a + bottom.getRed() * (1 - a)),
+                Math.round(top.getGreen() * a + bottom.getGreen() * (1 - a)),
+                Math.round(top.getBlue() * a + bottom.getBlue() * (1 - a)));
+    }
+
+    // Metrics for the same render context as the glyph vectors, so widths match Text.width()
+    private static FontMetrics metrics(Font font) {
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        prepare(g);
+        FontMetrics fm = g.getFontMetrics(font);
+        g.dispose();
+        return fm;
+    }
+
+    protected Text title(String s) { return text(titleText, TITLE_FONT, s); }
+
+    protected Text label(String s) { return text(labelText, LABEL_FONT, s); }
+
+    protected Text message(String s) { return text(messageText, MESSAGE_FONT, s); }
+
+    // Width of s in the label font, as label(s).width() would give, without laying it out or caching it
+    protected int labelWidth(String s) {
+        Text t = labelText.get(s);
+        return t != null ? t.width() : (int) Math.ceil(LABEL_METRICS.getStringBounds(s, null).getWidth());
+    }
+
+    private static Text text(Map<String, Text> cache, Font font, String s) {
+        Text t = cache.get(s);
+        if (t == null) {
+            if (cache.size() >= MAX_CACHED_TEXT) cache.clear();
+            t = new Text(font.createGlyphVector(FRC, s));
+            cache.put(s, t);
+        }
+        return t;
+    }
+
+    // A string laid out once in a given font
+    protected static final class Text {
+        private final GlyphVector glyphs;
+        private final int width;
+
+        private Text(GlyphVector glyphs) {
+            this.glyphs = glyphs;
+            this.width = (int) Math.ceil(glyphs.getLogicalBounds().getWidth());
+        }
+
+        public int width() { return width; }
+
+        // Draw with the baseline at y, like Graphics.drawString
+        public void draw(Graphics2D g, int x, int y) {
+            g.drawGlyphVector(glyphs, x, y);
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package fitnesstracker;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Append-only journal of user mutations kept next to the snapshot file
+ * (e.g. fitness_users.csv -> fitness_users.csv.journal).
+ *
+ * Every change is encoded on the calling thread and appended by a single writer thread,
+ * which fsyncs at most once per SYNC_DELAY_MS so bursts of changes share one sync.
+ * On startup the snapshot is loaded and the journal replayed on top of it. Compaction
+ * writes a fresh snapshot and replaces the journal with an empty one; it is requested once the
+ * journal outgrows both the size threshold and a share (the compact ratio) of the snapshot, so
+ * the cost of rewriting the snapshot is spread over changes of about that share of its size.
+ *
+ * The journal header stores the length and CRC32 of the snapshot it applies to, so a
+ * journal left behind by an interrupted compaction is recognised as stale and skipped.
+ *
+ * If a write, sync or compaction fails (e.g. the disk is full) the journal can no longer vouch for
+ * the files: it reports the failure to its FailureHandler and stops appending, since replaying a
+ * journal with a record missing in the middle would give wrong data. The next successful
+ * compaction writes everything again and starts a new journal; so does a new load().
+ */
+public class ChangeJournal implements UserChangeListener, Closeable {
+    private static final byte[] MAGIC = {'F', 'T', 'J', '1'};
+    private static final int HEADER_SIZE = MAGIC.length + 8 + 8;
+    private static final int MAX_RECORD = 1 << 20;
+
+    // record types
+    private static final byte USER_ADDED = 1;
+    private static final byte USER_REMOVED = 2;
+    private static final byte ENTRY_ADDED = 3;
+    private static final byte HISTORY_CLEARED = 4;
+    private static final byte GOALS_CHANGED = 5;
+    private static final byte WATER_ADDED = 6;
+    private static final byte PROFILE_CHANGED = 7;
+    private static final byte USER_RENAMED = 8;
+
+    private static final long SYNC_DELAY_MS = 50;
+    private static final long DEFAULT_COMPACT_THRESHOLD = 4L << 20; // 4 MB of journal
+    private static final double DEFAULT_COMPACT_RATIO = 0.5;         // of the snapshot size
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final FitnessDataManager.Format snapshotFormat;
+    private final ScheduledExecutorService writer;
+
+    // Only touched on the writer thread
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long journalBytes;
+    private long snapshotBytes;
+    private boolean syncScheduled;
+    private boolean compactionRequested;
+
+    // set once a change could not be written; cleared by a successful compaction or load
+    private volatile IOException failure;
+    private volatile FailureHandler failureHandler;
+    private volatile Runnable compactionHandler;
+    private volatile long compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+    private volatile double compactRatio = DEFAULT_COMPACT_RATIO;
+    private volatile int loadParallelism = Runtime.getRuntime().availableProcessors();
+
+    public ChangeJournal(File snapshotFile, FitnessDataManager.Format snapshotFormat) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + ".journal");
+        this.snapshotFormat = snapshotFormat;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public File getJournalFile() { return journalFile; }
+
+    /**
+     * Told when changes stop reaching the disk and when they do again. Called on the writer thread,
+     * or on the thread that made the change if it could not even be encoded.
+     */
+    public interface FailureHandler {
+        // a change was lost; the files are behind the users in memory until recovered() is called
+        void failed(IOException cause);
+
+        // a compaction or load brought the files up to date again
+        void recovered();
+    }
+
+    public void setFailureHandler(FailureHandler handler) { this.failureHandler = handler; }
+
+    // The failure that stopped the journal, or null while every change is being written
+    public IOException getFailure() { return failure; }
+
+    /**
+     * Called (on the writer thread) once the journal grows past the compaction threshold.
+     * The handler is expected to capture user snapshots and pass them to compact().
+     */
+    public void setCompactionHandler(Runnable handler) { this.compactionHandler = handler; }
+    // Minimum journal size before compaction is requested
+    public void setCompactThreshold(long bytes) { this.compactThreshold = bytes; }
+    // Journal size, as a share of the snapshot size, before compaction is requested
+    public void setCompactRatio(double ratio) { this.compactRatio = ratio; }
+    // Number of threads used to parse the snapshot in load()
+    public void setLoadParallelism(int threads) { this.loadParallelism = threads; }
+
+    /**
+     * Load the snapshot, replay the journal on top of it and start journaling changes
+     * to the returned users.
+     */
+    public List<User> load() throws IOException {
+        List<User> users = callOnWriter(() -> {
+            Replay replay = openJournal();
+            List<User> list = new ArrayList<>();
+            for (User u : FitnessDataManager.loadUsersParallel(snapshotFile, loadParallelism)) {
+                User r = replay.apply(u);
+                if (r != null) list.add(r);
+            }
+            list.addAll(replay.created());
+            return list;
+        });
+        for (User u : users) u.addChangeListener(this);
+        return users;
+    }
+
+    /**
+     * Stream the snapshot to the sink, with each user's journaled changes applied before it is
+     * handed out; users created by the journal follow at the end. Users are tracked before the
+     * sink sees them, and the journal accepts new changes even if the sink stops early.
+     * Returns false if the sink stopped the load.
+     */
+    public boolean load(FitnessDataManager.UserSink sink) throws IOException {
+        return callOnWriter(() -> {
+            Replay replay = openJournal();
+            boolean completed = FitnessDataManager.streamUsers(snapshotFile, (u, read, total) -> {
+                User r = replay.apply(u);
+                if (r == null) return true;
+                r.addChangeListener(this);
+                return sink.accept(r, read, total);
+            });
+            if (!completed) return false;
+            long total = snapshotFile.length();
+            for (User u : replay.created()) {
+                u.addChangeListener(this);
+                if (!sink.accept(u, total, total)) return false;
+            }
+            return true;
+        });
+    }
+
+    // Read the valid part of the journal and reopen it for appending (writer thread)
+    private Replay openJournal() throws IOException {
+        closeStream();
+        long[] base = fingerprint(snapshotFile);
+        snapshotBytes = Math.max(0, base[0]);
+        Replay replay = new Replay();
+        long validEnd = replay.read(base);
+        if (validEnd < 0) startNewJournal(base);
+        else openForAppend(validEnd);
+        // the users are about to be replaced by what is on disk
+        recover();
+        return replay;
+    }
+
+    // Record a newly added user (including any state it already carries) and track its changes
+    public void userAdded(User u) {
+        append(USER_ADDED, u.getName(), d -> {
+            d.writeInt(u.getAge());
+            d.writeDouble(u.getWeightKg());
+            d.writeDouble(u.getHeightCm());
+            BinaryDataFormat.writeString(d, u.getSex());
+        });
+        goalsChanged(u);
+        profileChanged(u);
+        for (ExerciseEntry e : u.getHistory()) entryAdded(u, e);
+        for (WaterRecord r : u.getWaterRecords()) waterAdded(u, r);
+        u.addChangeListener(this);
+    }
+
+    public void userRemoved(User u) {
+        u.removeChangeListener(this);
+        append(USER_REMOVED, u.getName(), d -> { });
+    }
+
+    @Override
+    public void entryAdded(User u, ExerciseEntry e) {
+        append(ENTRY_ADDED, u.getName(), d -> {
+            BinaryDataFormat.writeString(d, e.getExerciseName());
+            d.writeDouble(e.getCalories());
+            d.writeLong(e.getTimestamp());
+        });
+    }
+
+    @Override
+    public void historyCleared(User u) {
+        append(HISTORY_CLEARED, u.getName(), d -> { });
+    }
+
+    @Override
+    public void goalsChanged(User u) {
+        append(GOALS_CHANGED, u.getName(), d -> {
+            d.writeInt(u.getDailyCalorieGoal());
+            d.writeDouble(u.getWeightGoalKg());
+            d.writeInt(u.getDailyWaterGoalMl());
+        });
+    }
+
+    @Override
+    public void waterAdded(User u, WaterRecord r) {
+        append(WATER_ADDED, u.getName(), d -> {
+            d.writeLong(r.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            d.writeInt(r.getTimestamp().getNano());
+            d.writeInt(r.getAmount());
+        });
+    }
+
+    @Override
+    public void profileChanged(User u) {
+        append(PROFILE_CHANGED, u.getName(), d -> {
+            d.writeInt(u.getAge());
+            d.writeDouble(u.getWeightKg());
+            d.writeDouble(u.getHeightCm());
+            BinaryDataFormat.writeString(d, u.getSex());
+            BinaryDataFormat.writeString(d, u.getAvatarPath());
+        });
+    }
+
+    // Keyed by the old name, so the records before and after the rename stay with one user
+    @Override
+    public void renamed(User u, String oldName) {
+        append(USER_RENAMED, oldName, d -> BinaryDataFormat.writeString(d, u.getName()));
+    }
+
+    // Block until every change appended so far is on disk; throws the failure if one was lost
+    public void sync() throws IOException {
+        callOnWriter(() -> { syncNow(); return null; });
+        IOException f = failure;
+        if (f != null) throw f;
+    }
+
+    /**
+     * Fold the journal into a new snapshot. The users must be point-in-time copies
+     * (see User.snapshot()) taken on the thread that mutates them, so that they
+     * contain exactly the changes appended before this call.
+     */
+    public Future<?> compact(List<User> snapshot) {
+        return writer.submit(() -> {
+            compactNow(snapshot);
+            return null;
+        });
+    }
+
+    // Sync and close; throws the failure if a change was lost and not recovered by a compaction
+    @Override
+    public void close() throws IOException {
+        try {
+            callOnWriter(() -> {
+                if (failure != null) {
+                    discardStream();
+                    return null;
+                }
+                try {
+                    syncNow();
+                    closeStream();
+                } catch (IOException ex) {
+                    fail(ex);
+                }
+                return null;
+            });
+        } finally {
+            writer.shutdown();
+        }
+        IOException f = failure;
+        if (f != null) throw f;
+    }
+
+    // -------- encoding (caller thread) --------
+
+    private interface Body {
+        void write(DataOutputStream d) throws IOException;
+    }
+
+    private void append(byte type, String name, Body body) {
+        if (writer.isShutdown()) return;
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream d = new DataOutputStream(bytes);
+            d.writeByte(type);
+            BinaryDataFormat.writeString(d, name);
+            body.write(d);
+            payload = bytes.toByteArray();
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        }
+        writer.execute(() -> writeRecord(payload));
+    }
+
+    // -------- writer thread --------
+
+    // Record layout: i32 payload length, payload, i32 CRC32 of payload
+    private void writeRecord(byte[] payload) {
+        // after a failure the records are dropped; the next compaction writes the users in full
+        if (out == null || failure != null) return;
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int) crc.getValue());
+            journalBytes += payload.length + 8;
+            if (!syncScheduled) {
+                syncScheduled = true;
+                writer.schedule(this::syncQuietly, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+            Runnable handler = compactionHandler;
+            long threshold = Math.max(compactThreshold, (long) (snapshotBytes * compactRatio));
+            if (journalBytes > threshold && !compactionRequested && handler != null) {
+                compactionRequested = true;
+                handler.run();
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void syncQuietly() {
+        try { syncNow(); } catch (IOException ex) { fail(ex); }
+    }
+
+    private void syncNow() throws IOException {
+        syncScheduled = false;
+        if (out == null || failure != null) return;
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    private void compactNow(List<User> snapshot) throws IOException {
+        try {
+            long crc = FitnessDataManager.saveUsersAtomic(snapshot, snapshotFile, snapshotFormat);
+            // the new snapshot holds every change, so whatever the old journal still buffers is not needed
+            discardStream();
+            snapshotBytes = snapshotFile.length();
+            startNewJournal(new long[]{snapshotBytes, crc});
+            recover();
+        } catch (IOException ex) {
+            fail(ex);
+            throw ex;
+        } finally {
+            compactionRequested = false;
+        }
+    }
+
+    // Record the first failure since the files were last known to be up to date
+    private void fail(IOException ex) {
+        synchronized (this) {
+            if (failure != null) return;
+            failure = ex;
+        }
+        FailureHandler h = failureHandler;
+        if (h != null) h.failed(ex);
+    }
+
+    private void recover() {
+        synchronized (this) {
+            if (failure == null) return;
+            failure = null;
+        }
+        FailureHandler h = failureHandler;
+        if (h != null) h.recovered();
+    }
+
+    // Close the journal stream without writing what it still buffers
+    private void discardStream() {
+        if (out == null) return;
+        try {
+            fileOut.close();
+        } catch (IOException ex) {
+            // nothing in it is needed any more
+        } finally {
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    private void closeStream() throws IOException {
+        if (out == null) return;
+        try {
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+        } finally {
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    // Atomically replace the journal with an empty one based on the given snapshot fingerprint
+    private void startNewJournal(long[] base) throws IOException {
+        File dir = journalFile.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(journalFile.getName(), ".tmp", dir);
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                DataOutputStream d = new DataOutputStream(fos);
+                d.write(MAGIC);
+                d.writeLong(base[0]);
+                d.writeLong(base[1]);
+                d.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+        openForAppend(HEADER_SIZE);
+    }
+
+    private void openForAppend(long validEnd) throws IOException {
+        // drop a torn tail left by a crash so new records follow the last valid one
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            if (raf.length() > validEnd) raf.setLength(validEnd);
+        }
+        fileOut = new FileOutputStream(journalFile, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+        journalBytes = validEnd;
+    }
+
+    /**
+     * Journal records grouped per user, so every snapshot user can be brought up to date
+     * on its own while the snapshot is still being read. The result is the same as replaying
+     * the records in order over the whole list: surviving snapshot users keep their order and
+     * users created by the journal follow in creation order. As with a sequential replay, only
+     * the first snapshot user with a given name receives its records.
+     *
+     * Records carry the user's name at the time they were written. A rename record moves the
+     * name's later records to the same group, so each group is found under the name the user
+     * had in the snapshot (or was created with).
+     */
+    private final class Replay {
+        private final List<byte[]> records = new ArrayList<>();
+        // record groups by the name they started under
+        private final Map<String, List<Integer>> byName = new LinkedHashMap<>();
+        // groups that started under a name an earlier group was renamed away from; these can only create users
+        private final List<List<Integer>> renamedAway = new ArrayList<>();
+        // current name -> its group
+        private final Map<String, List<Integer>> active = new HashMap<>();
+        private final TreeMap<Integer, User> created = new TreeMap<>();
+
+        /**
+         * Returns the offset after the last valid record, or -1 if there is no usable journal
+         * (missing, unreadable or written against a different snapshot).
+         */
+        long read(long[] base) throws IOException {
+            if (!journalFile.exists()) return -1;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), 1 << 16))) {
+                byte[] head = new byte[MAGIC.length];
+                long baseLen, baseCrc;
+                try {
+                    in.readFully(head);
+                    baseLen = in.readLong();
+                    baseCrc = in.readLong();
+                } catch (EOFException ex) {
+                    return -1;
+                }
+                for (int i = 0; i < head.length; i++) if (head[i] != MAGIC[i]) return -1;
+                if (baseLen != base[0] || baseCrc != base[1]) return -1;
+
+                long pos = HEADER_SIZE;
+                CRC32 crc = new CRC32();
+                while (true) {
+                    byte[] payload;
+                    int stored;
+                    try {
+                        int len = in.readInt();
+                        if (len <= 0 || len > MAX_RECORD) break;
+                        payload = new byte[len];
+                        in.readFully(payload);
+                        stored = in.readInt();
+                    } catch (EOFException ex) {
+                        break; // torn tail
+                    }
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != stored) break;
+                    DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+                    byte type = d.readByte();
+                    String name = BinaryDataFormat.readString(d);
+                    List<Integer> group = active.get(name);
+                    if (group == null) {
+                        group = new ArrayList<>();
+                        active.put(name, group);
+                        if (byName.putIfAbsent(name, group) != null) renamedAway.add(group);
+                    }
+                    group.add(records.size());
+                    if (type == USER_RENAMED) {
+                        active.remove(name);
+                        active.put(BinaryDataFormat.readString(d), group);
+                    }
+                    records.add(payload);
+                    pos += 8 + payload.length;
+                }
+                return pos;
+            }
+        }
+
+        // The user to hand out in place of a snapshot user, or null if the journal removed it
+        User apply(User snapshotUser) throws IOException {
+            List<Integer> idx = byName.remove(snapshotUser.getName());
+            if (idx == null) return snapshotUser;
+            User u = walk(snapshotUser, idx);
+            return u == snapshotUser ? u : null;
+        }
+
+        // Users created by the journal (including removed-and-re-added ones), in creation order
+        Collection<User> created() throws IOException {
+            for (List<Integer> idx : byName.values()) walk(null, idx);
+            for (List<Integer> idx : renamedAway) walk(null, idx);
+            byName.clear();
+            renamedAway.clear();
+            return created.values();
+        }
+
+        private User walk(User start, List<Integer> idx) throws IOException {
+            User u = start;
+            int createdAt = -1;
+            for (int i : idx) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(records.get(i)));
+                byte type = in.readByte();
+                String name = BinaryDataFormat.readString(in);
+                if (type == USER_ADDED) {
+                    int age = in.readInt();
+                    double w = in.readDouble();
+                    double h = in.readDouble();
+                    String sex = BinaryDataFormat.readString(in);
+                    if (u == null) {
+                        u = new User(name, age, w, h, sex);
+                        createdAt = i;
+                    }
+                } else if (type == USER_REMOVED) {
+                    u = null;
+                } else if (u != null) {
+                    applyChange(type, in, u);
+                }
+            }
+            if (u != null && u != start) created.put(createdAt, u);
+            return u;
+        }
+    }
+
+    private static void applyChange(byte type, DataInputStream in, User u) throws IOException {
+        switch (type) {
+            case ENTRY_ADDED: {
+                String ex = BinaryDataFormat.readString(in);
+                double cal = in.readDouble();
+                long ts = in.readLong();
+                u.addExerciseEntry(ex, cal, ts);
+                break;
+            }
+            case HISTORY_CLEARED:
+                u.clearHistory();
+                break;
+            case GOALS_CHANGED:
+                u.setGoals(in.readInt(), in.readDouble(), in.readInt());
+                break;
+            case WATER_ADDED: {
+                long sec = in.readLong();
+                int nano = in.readInt();
+                int amount = in.readInt();
+                u.addWaterRecord(new WaterRecord(amount, LocalDateTime.ofEpochSecond(sec, nano, ZoneOffset.UTC)));
+                break;
+            }
+            case PROFILE_CHANGED:
+                u.setProfile(in.readInt(), in.readDouble(), in.readDouble(), BinaryDataFormat.readString(in));
+                u.setAvatarPath(BinaryDataFormat.readString(in));
+                break;
+            case USER_RENAMED:
+                u.setName(BinaryDataFormat.readString(in));
+                break;
+            default:
+                break; // unknown record type from a newer version
+        }
+    }
+
+    // Length and CRC32 of the snapshot file; {-1, 0} if it does not exist
+    private static long[] fingerprint(File file) throws IOException {
+        if (!file.exists()) return new long[]{-1, 0};
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(new FileInputStream(file), crc)) {
+            byte[] buf = new byte[1 << 16];
+            while (in.read(buf) >= 0) { /* checksum only */ }
+        }
+        return new long[]{file.length(), crc.getValue()};
+    }
+
+    private <T> T callOnWriter(Callable<T> task) throws IOException {
+        try {
+            return writer.submit(task).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the change journal");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+}
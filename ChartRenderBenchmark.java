@@ -0,0 +1,117 @@
+package fitnesstracker;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Console benchmark for chart rendering (CachedChartPanel and its subclasses), in frames per second.
+ *
+ * Paints each chart into an offscreen "screen" image, the way Swing would, for three kinds of frame:
+ * - resize: the panel size changes every frame (a window being dragged bigger and smaller)
+ * - expose: same size and data, e.g. another window moved over the chart
+ * - update: one value changes, so only that bar is redrawn
+ * The charts are the per-exercise bar chart with many long category names, the 7-bar progress
+ * chart, and the timeline over several years of daily entries.
+ *
+ * Usage: ChartRenderBenchmark [categories=2000] [frames=300]
+ * Run headless (-Djava.awt.headless=true) on machines without a display.
+ */
+public class ChartRenderBenchmark {
+    private static final int MIN_W = 640, MAX_W = 1600, MIN_H = 400, MAX_H = 1000;
+
+    public static void main(String[] args) {
+        int categories = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        BufferedImage screen = new BufferedImage(MAX_W, MAX_H, BufferedImage.TYPE_INT_RGB);
+        Random rnd = new Random(11);
+
+        System.out.println("=== Chart Render Benchmark ===");
+        System.out.printf("%d frames per run, sizes %dx%d to %dx%d%n", frames, MIN_W, MIN_H, MAX_W, MAX_H);
+
+        ChartWindow.ChartPanel bars = new ChartWindow.ChartPanel();
+        String[] names = new String[categories];
+        double[] values = new double[categories];
+        for (int i = 0; i < categories; i++) {
+            names[i] = "Interval training session variant " + i;
+            values[i] = 100 + rnd.nextInt(50_000);
+        }
+        Arrays.sort(values);
+        for (int i = 0, j = categories - 1; i < j; i++, j--) { double t = values[i]; values[i] = values[j]; values[j] = t; }
+        bars.setData(names, values);
+        run("exercise bars (" + categories + ")", bars, screen, frames, () -> {
+            double[] v = values.clone();
+            v[0] += 1; // keeps the scale and order, so only bar 0 is redrawn
+            values[0] = v[0];
+            bars.setData(names, v);
+        });
+
+        ProgressWindow.ChartPanel progress = new ProgressWindow.ChartPanel();
+        List<String> labels = Arrays.asList("Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun");
+        List<Double> week = new ArrayList<>();
+        for (int i = 0; i < 7; i++) week.add(200.0 + rnd.nextInt(600));
+        progress.setData("Daily Calories (last 7 days)", labels, week, 900);
+        run("progress (7 bars)", progress, screen, frames, () -> {
+            List<Double> w = new ArrayList<>(week);
+            w.set(3, w.get(3) + 1);
+            week.set(3, w.get(3));
+            progress.setData("Daily Calories (last 7 days)", labels, w, 900);
+        });
+
+        User user = new User("bench", 30, 70, 175, "Female");
+        long day = 24L * 3600 * 1000;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5 * 365; i++) {
+            for (int e = rnd.nextInt(4); e > 0; e--) user.addExerciseEntry(rnd.nextInt(12), 50 + rnd.nextInt(600), now - i * day);
+        }
+        TimelinePanel timeline = new TimelinePanel();
+        timeline.setUser(user);
+        run("timeline (5 years)", timeline, screen, frames, () -> {
+            user.addExerciseEntry(0, 10, now);
+            timeline.refresh();
+        });
+        System.out.println("=== End Benchmark ===");
+    }
+
+    private static void run(String label, CachedChartPanel panel, BufferedImage screen, int frames, Runnable update) {
+        Graphics2D g = screen.createGraphics();
+        panel.setSize(MIN_W, MIN_H);
+        // warm-up over the full size range
+        for (int i = 0; i < frames; i++) paint(panel, g, i, frames, true);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) paint(panel, g, i, frames, true);
+        double resize = fps(frames, System.nanoTime() - t0);
+
+        panel.setSize(1024, 700);
+        t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) panel.paint(g);
+        double expose = fps(frames, System.nanoTime() - t0);
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            update.run();
+            panel.paint(g);
+        }
+        double updates = fps(frames, System.nanoTime() - t0);
+        g.dispose();
+        System.out.printf("%-26s resize %8.0f fps   expose %8.0f fps   update %8.0f fps%n", label, resize, expose, updates);
+    }
+
+    // Frame i of a drag from the smallest to the largest size and back
+    private static void paint(CachedChartPanel panel, Graphics2D g, int i, int frames, boolean resize) {
+        if (resize) {
+            double t = (double) (i % frames) / frames;
+            double f = t < 0.5 ? 2 * t : 2 - 2 * t;
+            panel.setSize(MIN_W + (int) (f * (MAX_W - MIN_W)), MIN_H + (int) (f * (MAX_H - MIN_H)));
+        }
+        panel.paint(g);
+    }
+
+    private static double fps(int frames, long nanos) {
+        return frames / (nanos / 1e9);
+    }
+}
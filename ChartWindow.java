@@ -2,15 +2,61 @@ package fitnesstracker;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Simple chart window that draws a bar chart showing calories per exercise.
  * This avoids external chart libraries and uses custom painting to match the pastel theme.
+ *
+ * Bars are sorted by calories. Only the top N exercises get a bar of their own (picked with a
+ * bounded heap); the rest are folded into an "Other" bar. When the bars do not fit, the chart
+ * scrolls horizontally and only the bars in view are painted, so users with thousands of
+ * distinct activities stay responsive.
+ *
+ * Opened for a User, the window follows the user's new entries: changes are coalesced into one
+ * refresh per frame (CoalescedRefresh), and when the bars keep their order and scale only the
+ * bars whose value changed are redrawn.
  */
 public class ChartWindow extends JFrame {
+    private static final String[] SHOW_CHOICES = {"Top 10", "Top 25", "Top 100", "All"};
+    private static final int[] SHOW_LIMITS = {10, 25, 100, Integer.MAX_VALUE};
+    private static final String OTHER = "Other";
+    private static final String UNNAMED = "(unnamed)";
+
+    private final User user;
+    private Map<String, Double> data;
+    private final ChartPanel chartPanel = new ChartPanel();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.HORIZONTAL);
+    private final JComboBox<String> showBox = new JComboBox<>(SHOW_CHOICES);
+
+    private final CoalescedRefresh pendingRefresh = new CoalescedRefresh(this::reload);
+    private final UserChangeListener changes = new UserChangeListener() {
+        @Override public void entryAdded(User u, ExerciseEntry entry) { pendingRefresh.request(); }
+        @Override public void historyCleared(User u) { pendingRefresh.request(); }
+    };
+
+    // Live chart of the user's calories per exercise
+    public ChartWindow(User user) {
+        this(user, user.getName(), user.getExerciseStats().caloriesByName());
+        user.addChangeListener(changes);
+    }
+
+    // Static chart of the given data
     public ChartWindow(String userName, Map<String, Double> data) {
+        this(null, userName, data);
+    }
+
+    private ChartWindow(User user, String userName, Map<String, Double> data) {
         super("Calories Burned by Exercise - " + userName);
+        this.user = user;
+        this.data = data;
         setSize(720, 480);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -18,14 +64,32 @@ public class ChartWindow extends JFrame {
         getContentPane().setBackground(new Color(0xF3FBF8));
 
         setLayout(new BorderLayout());
-        ChartPanel cp = new ChartPanel(data);
-        add(cp, BorderLayout.CENTER);
+        JPanel center = new JPanel(new BorderLayout());
+        center.setOpaque(false);
+        center.add(chartPanel, BorderLayout.CENTER);
+        center.add(scrollBar, BorderLayout.SOUTH);
+        add(center, BorderLayout.CENTER);
+
+        // the scroll bar works in pixels of the bar strip; the chart panel stays the size of the window
+        scrollBar.setUnitIncrement(ChartPanel.MIN_BAR_W + ChartPanel.GAP);
+        scrollBar.addAdjustmentListener(e -> chartPanel.setOffset(e.getValue()));
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override public void componentResized(ComponentEvent e) { updateScrollBar(); }
+        });
+        chartPanel.addMouseWheelListener(e -> scrollBar.setValue(scrollBar.getValue()
+                + (int) Math.round(e.getPreciseWheelRotation() * scrollBar.getUnitIncrement())));
 
         // Bottom control panel with a 'Go Back' button that closes this window and returns focus to main GUI
         JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         bottom.setOpaque(false);
         bottom.setBorder(BorderFactory.createEmptyBorder(10, 12, 12, 12));
 
+        showBox.setSelectedIndex(1);
+        showBox.addActionListener(e -> {
+            showTop(SHOW_LIMITS[showBox.getSelectedIndex()]);
+            scrollBar.setValue(0);
+        });
+
         JButton backBtn = new RoundedButton("Go Back");
         backBtn.setBackground(new Color(0xAEE6CE)); // pastel green
         backBtn.setForeground(new Color(0x1F3D3D));
@@ -35,8 +99,84 @@ public class ChartWindow extends JFrame {
             dispose();
         });
 
+        bottom.add(showBox);
         bottom.add(backBtn);
         add(bottom, BorderLayout.SOUTH);
+
+        showTop(SHOW_LIMITS[showBox.getSelectedIndex()]);
+    }
+
+    @Override
+    public void dispose() {
+        if (user != null) user.removeChangeListener(changes);
+        pendingRefresh.stop();
+        super.dispose();
+    }
+
+    // Re-read the user's per-exercise totals (O(distinct exercises)) and update the bars; this runs on
+    // the EDT, which owns the user, so no snapshot is needed
+    private void reload() {
+        data = user.getExerciseStats().caloriesByName();
+        showTop(SHOW_LIMITS[showBox.getSelectedIndex()]);
+    }
+
+    private void showTop(int limit) {
+        List<Map.Entry<String, Double>> top = topEntries(data, limit);
+        int n = top.size();
+        double other = 0;
+        int otherCount = 0;
+        if (data != null && data.size() > n) {
+            // everything that did not make the cut goes into one bar
+            double kept = 0;
+            for (Map.Entry<String, Double> e : top) kept += e.getValue();
+            for (Double v : data.values()) other += v;
+            other -= kept;
+            otherCount = data.size() - n;
+        }
+        String[] names = new String[otherCount > 0 ? n + 1 : n];
+        double[] values = new double[names.length];
+        for (int i = 0; i < n; i++) {
+            Map.Entry<String, Double> e = top.get(i);
+            names[i] = e.getKey() != null ? e.getKey() : UNNAMED;
+            values[i] = e.getValue();
+        }
+        if (otherCount > 0) {
+            names[n] = OTHER + " (" + otherCount + ")";
+            values[n] = other;
+        }
+        chartPanel.setData(names, values);
+        updateScrollBar();
+    }
+
+    private void updateScrollBar() {
+        int visible = Math.max(1, chartPanel.plotWidth());
+        int content = Math.max(visible, chartPanel.contentWidth());
+        scrollBar.setValues(Math.min(scrollBar.getValue(), content - visible), visible, 0, content);
+        scrollBar.setBlockIncrement(visible);
+        scrollBar.setVisible(content > visible);
+        chartPanel.setOffset(scrollBar.getValue());
+    }
+
+    /**
+     * The 'limit' entries with the most calories, largest first. Uses a min-heap of at most
+     * 'limit' entries, so picking the top N of n categories is O(n log N) rather than a full sort.
+     */
+    static List<Map.Entry<String, Double>> topEntries(Map<String, Double> data, int limit) {
+        if (data == null || data.isEmpty() || limit <= 0) return new ArrayList<>();
+        Comparator<Map.Entry<String, Double>> byValue = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<>(Math.min(limit, data.size()) + 1, byValue);
+        for (Map.Entry<String, Double> e : data.entrySet()) {
+            if (heap.size() < limit) heap.add(e);
+            else if (e.getValue() > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        List<Map.Entry<String, Double>> out = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) out.add(heap.poll());
+        // the heap hands out the smallest first
+        Collections.reverse(out);
+        return out;
     }
 
     // RoundedButton for consistent modern buttons within ChartWindow
@@ -64,84 +204,163 @@ public class ChartWindow extends JFrame {
         public void paintBorder(Graphics g) { /* no border */ }
     }
 
-    private static class ChartPanel extends JPanel {
-        private final java.util.List<String> keys = new java.util.ArrayList<>();
-        private final java.util.List<Double> values = new java.util.ArrayList<>();
+    static class ChartPanel extends CachedChartPanel {
+        static final int MIN_BAR_W = 24;
+        static final int GAP = 16;
+        private static final int LEFT = 60, RIGHT = 40;
+        // pastel palette for bars
+        private static final Color[] PALETTE = {
+                new Color(0xAEE6CE), new Color(0xB3D9FF), new Color(0x7CC8B4), new Color(0xFFD9B3), new Color(0xE6C7FF)};
+        private static final Color AXIS_COLOR = new Color(180, 200, 190);
 
-        public ChartPanel(Map<String, Double> data) {
-            setBackground(new Color(0xF3FBF8));
-            if (data != null) {
-                data.forEach((k, v) -> { keys.add(k); values.add(v); });
-            }
+        private String[] names = new String[0];
+        private double[] values = new double[0];
+        // value labels, formatted once per data set
+        private String[] valueLabels = new String[0];
+        // names shortened to fit under their bar, for the bar width in 'elidedFor'
+        private String[] elided = new String[0];
+        private int elidedFor = -1;
+        private double max = 1;
+        // horizontal scroll position within the bar strip, in pixels
+        private int offset;
+
+        public ChartPanel() {
             setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
         }
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        public void setData(String[] names, double[] values) {
+            String[] newValueLabels = new String[values.length];
+            double newMax = 0;
+            for (int i = 0; i < values.length; i++) {
+                newValueLabels[i] = String.format("%.0f", values[i]);
+                if (values[i] > newMax) newMax = values[i];
+            }
+            if (newMax <= 0) newMax = 1;
+
+            // same bars in the same order and the same scale: only redraw the bars whose value changed
+            Rectangle changed = null;
+            boolean sameLayout = newMax == max && java.util.Arrays.equals(names, this.names);
+            if (sameLayout) {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == this.values[i]) continue;
+                    Rectangle r = barColumn(i, valueLabels[i], newValueLabels[i]);
+                    changed = changed == null ? r : changed.union(r);
+                }
+            } else {
+                elided = new String[names.length];
+                elidedFor = -1;
+            }
+            this.names = names;
+            this.values = values;
+            valueLabels = newValueLabels;
+            max = newMax;
+            if (!sameLayout) dataChanged();
+            else if (changed != null) dataChanged(changed);
+        }
 
-            int w = getWidth();
-            int h = getHeight();
+        // Column of the chart covered by bar i and its labels, at the current scroll position
+        private Rectangle barColumn(int i, String oldValue, String newValue) {
+            int barW = barWidth();
+            int bx = LEFT + GAP - offset + i * (barW + GAP);
+            int textW = Math.max(label(oldValue).width(), label(newValue).width());
+            int half = Math.max(barW + GAP, textW) / 2 + 2;
+            return new Rectangle(bx + barW / 2 - half, 0, 2 * half, getHeight());
+        }
+
+        public void setOffset(int offset) {
+            if (offset == this.offset) return;
+            this.offset = offset;
+            dataChanged();
+        }
 
+        int plotWidth() { return getWidth() - LEFT - RIGHT; }
+
+        // Width of the whole bar strip at the current size
+        int contentWidth() {
+            int n = names.length;
+            return GAP + n * (barWidth() + GAP);
+        }
+
+        // Bars stretch to fill the plot when they fit, otherwise they keep the minimum width and scroll
+        private int barWidth() {
+            int n = names.length;
+            return Math.max(MIN_BAR_W, (plotWidth() - (n + 1) * GAP) / Math.max(1, n));
+        }
+
+        @Override
+        protected void renderChart(Graphics2D g2, int w, int h) {
             // draw title
-            g2.setFont(new Font("SansSerif", Font.BOLD, 16));
-            g2.setColor(new Color(28, 60, 60));
-            g2.drawString("Calories Burned by Exercise", 20, 28);
-
-            if (keys.isEmpty()) {
-                g2.setFont(new Font("SansSerif", Font.PLAIN, 14));
-                g2.drawString("No exercise history to display.", 20, 60);
-                g2.dispose();
+            g2.setColor(TEXT_COLOR);
+            title("Calories Burned by Exercise").draw(g2, 20, 28);
+
+            if (names.length == 0) {
+                message("No exercise history to display.").draw(g2, 20, 60);
                 return;
             }
 
-            double max = 0;
-            for (Double v : values) if (v > max) max = v;
-            if (max <= 0) max = 1;
-
-            int left = 60, top = 60, bottom = h - 80;
+            int left = LEFT, top = 60, bottom = h - 80;
             int plotH = bottom - top;
-            int plotW = w - left - 40;
+            int plotW = plotWidth();
 
-            int n = keys.size();
-            int gap = 16;
-            int barW = Math.max(24, (plotW - (n + 1) * gap) / Math.max(1, n));
+            int n = names.length;
+            int barW = barWidth();
+            int step = barW + GAP;
 
             // draw axis
-            g2.setColor(new Color(180, 200, 190));
+            g2.setColor(AXIS_COLOR);
             g2.fillRoundRect(left - 40, top - 10, plotW + 80, plotH + 20, 12, 12);
 
-            // pastel palette for bars
-            Color[] palette = new Color[] { new Color(0xAEE6CE), new Color(0xB3D9FF), new Color(0x7CC8B4), new Color(0xFFD9B3), new Color(0xE6C7FF) };
-
-            int x = left + gap;
-            g2.setFont(new Font("SansSerif", Font.PLAIN, 12));
-            for (int i = 0; i < n; i++) {
-                double val = values.get(i);
+            // only the bars in view (plus a partly visible one on each side)
+            int first = Math.max(0, (offset - GAP) / step);
+            int last = Math.min(n - 1, (offset + plotW) / step);
+            Shape clip = g2.getClip();
+            g2.clipRect(left - 40, 0, plotW + 80, h);
+            int x = left + GAP - offset;
+            for (int i = first; i <= last; i++) {
+                double val = values[i];
                 int barH = (int) Math.round((val / max) * (plotH - 20));
-                int bx = x + i * (barW + gap);
+                int bx = x + i * step;
                 int by = bottom - barH;
 
-                Color c = palette[i % palette.length];
-                g2.setColor(c);
+                g2.setColor(PALETTE[i % PALETTE.length]);
                 g2.fillRoundRect(bx, by, barW, barH, 8, 8);
 
                 // label
-                g2.setColor(new Color(28, 60, 60));
-                String lbl = keys.get(i);
-                int strW = g2.getFontMetrics().stringWidth(lbl);
-                int lx = bx + (barW - strW) / 2;
-                g2.drawString(lbl, Math.max(10, lx), bottom + 16);
+                g2.setColor(TEXT_COLOR);
+                Text lbl = label(fitted(i, step - 4));
+                int lx = bx + (barW - lbl.width()) / 2;
+                lbl.draw(g2, offset == 0 ? Math.max(10, lx) : lx, bottom + 16);
 
                 // value on top
-                String valStr = String.format("%.0f", val);
-                int vsW = g2.getFontMetrics().stringWidth(valStr);
-                g2.drawString(valStr, bx + (barW - vsW) / 2, by - 8);
+                Text valStr = label(valueLabels[i]);
+                valStr.draw(g2, bx + (barW - valStr.width()) / 2, by - 8);
             }
+            g2.setClip(clip);
+        }
 
-            g2.dispose();
+        // Name of bar i, shortened with an ellipsis if it is wider than maxWidth
+        private String fitted(int i, int maxWidth) {
+            if (elidedFor != maxWidth) {
+                elided = new String[names.length];
+                elidedFor = maxWidth;
+            }
+            String s = elided[i];
+            if (s == null) {
+                s = names[i];
+                // candidates are only measured; just the final string is laid out and cached by label()
+                if (labelWidth(s) > maxWidth) {
+                    // longest prefix that fits with the ellipsis (at least one character)
+                    int lo = 1, hi = s.length() - 1;
+                    while (lo < hi) {
+                        int mid = (lo + hi + 1) >>> 1;
+                        if (labelWidth(s.substring(0, mid) + "\u2026") <= maxWidth) lo = mid;
+                        else hi = mid - 1;
+                    }
+                    s = s.substring(0, lo) + "\u2026";
+                }
+                elided[i] = s;
+            }
+            return s;
         }
     }
 }
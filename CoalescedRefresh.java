@@ -0,0 +1,30 @@
+package fitnesstracker;
+
+import javax.swing.Timer;
+
+/**
+ * Runs an action on the EDT at most once per frame interval, however often it is requested.
+ *
+ * The first request starts a one-shot timer; requests arriving before it fires are folded into
+ * that single run. Used by the chart windows so a burst of user changes (e.g. a sync source
+ * streaming entries) costs one recompute and repaint per frame instead of one per entry.
+ */
+public class CoalescedRefresh {
+    // about 30 updates per second
+    public static final int FRAME_MS = 33;
+
+    private final Timer timer;
+
+    public CoalescedRefresh(Runnable action) {
+        timer = new Timer(FRAME_MS, e -> action.run());
+        timer.setRepeats(false);
+    }
+
+    public void request() {
+        if (!timer.isRunning()) timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+}
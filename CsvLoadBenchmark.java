@@ -0,0 +1,285 @@
+package fitnesstracker;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Console benchmark for loading large CSV data files (CsvUserReader, loadUsersParallel, streamUsers).
+ *
+ * Writes a synthetic file of about the requested size with FitnessDataManager's own CSV writer,
+ * so it always matches the current layout, then times each loader on it. The first row is the
+ * loader as it was before CsvUserReader (splitCsv/unescapeField/parseHistoryIntoUser, copied
+ * below), so the others can be compared against it. Besides wall time, each row reports the bytes
+ * allocated per byte of file, measured on the loading thread; the parallel loader allocates on
+ * pool threads that are gone when it returns, so its allocation is not shown.
+ *
+ * Usage: CsvLoadBenchmark [megabytes=300] [entriesPerUser=200] [file]
+ * A given file is reused if it is already large enough; otherwise a temp file is written and
+ * deleted on exit. Loading a few hundred MB needs a heap of about 2 GB (-Xmx2g).
+ */
+public class CsvLoadBenchmark {
+    private static final int RUNS = 3;
+    private static final int USERS_PER_BATCH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        long mb = args.length > 0 ? Long.parseLong(args[0]) : 300;
+        int perUser = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        File file;
+        if (args.length > 2) {
+            file = new File(args[2]);
+        } else {
+            file = File.createTempFile("fitness_bench", ".csv");
+            file.deleteOnExit();
+        }
+
+        System.out.println("=== CSV Load Benchmark ===");
+        if (file.length() < (mb << 20) * 9 / 10) {
+            long t0 = System.nanoTime();
+            int users = generate(file, mb << 20, perUser, 42);
+            System.out.printf("Generated %d users x %d entries in %.1f s%n", users, perUser, (System.nanoTime() - t0) / 1e9);
+        }
+        double size = file.length() / (1024.0 * 1024.0);
+        System.out.printf("File: %s (%.1f MB)%n", file.getAbsolutePath(), size);
+
+        double[] legacy = time("legacy", size, true, () -> legacyLoadUsers(file).size());
+        double[] sequential = time("sequential", size, true, () -> FitnessDataManager.loadUsers(file).size());
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int p = 1; p <= cores; p *= 2) {
+            int threads = p;
+            // one thread reads on this one
+            time("parallel x" + threads, size, threads == 1, () -> FitnessDataManager.loadUsersParallel(file, threads).size());
+        }
+        time("streaming", size, true, () -> {
+            int[] n = new int[1];
+            FitnessDataManager.streamUsers(file, (u, read, total) -> { n[0]++; return true; });
+            return n[0];
+        });
+        System.out.printf("sequential vs legacy: %.1fx faster", legacy[0] / sequential[0]);
+        if (legacy[1] > 0 && sequential[1] > 0) System.out.printf(", %.1fx less allocation", legacy[1] / sequential[1]);
+        System.out.println();
+        System.out.println("=== End Benchmark ===");
+    }
+
+    /**
+     * Write users with 'perUser' entries each until the file reaches about 'bytes'.
+     * Returns the number of users written.
+     */
+    static int generate(File file, long bytes, int perUser, long seed) throws IOException {
+        Random rnd = new Random(seed);
+        List<Exercise> exercises = ExerciseCatalog.defaultExercises();
+        String[] sexes = {"Female", "Male"};
+        long now = System.currentTimeMillis();
+        long span = 730L * 24 * 3600 * 1000; // two years
+        int users = 0;
+        long written = 0;
+        try (OutputStream out = new FileOutputStream(file)) {
+            boolean first = true;
+            while (written < bytes) {
+                List<User> batch = new ArrayList<>(USERS_PER_BATCH);
+                for (int i = 0; i < USERS_PER_BATCH; i++) {
+                    User u = new User("user" + (users + i), 18 + rnd.nextInt(60), 50 + rnd.nextInt(60),
+                            150 + rnd.nextInt(50), sexes[rnd.nextInt(2)]);
+                    u.setGoals(1500 + rnd.nextInt(1500), 50 + rnd.nextInt(40), 2000 + rnd.nextInt(1000));
+                    long ts = now - span;
+                    for (int e = 0; e < perUser; e++) {
+                        ts += 1 + (long) (rnd.nextDouble() * 2 * span / perUser);
+                        Exercise ex = exercises.get(rnd.nextInt(exercises.size()));
+                        u.addExerciseEntry(ex.getName(), 20 + rnd.nextInt(80000) / 100.0, ts);
+                    }
+                    batch.add(u);
+                }
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream(USERS_PER_BATCH * perUser * 40);
+                FitnessDataManager.saveUsers(batch, chunk);
+                byte[] b = chunk.toByteArray();
+                // every chunk starts with the header line; keep only the first one
+                int from = 0;
+                if (!first) while (b[from++] != '\n') { /* skip header */ }
+                out.write(b, from, b.length - from);
+                written += b.length - from;
+                users += batch.size();
+                first = false;
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Best and median of RUNS loads, after one warm-up run, and the bytes allocated per byte of file
+     * (on this thread, if 'countAllocation'). Returns {best seconds, allocated per byte or -1}.
+     */
+    private static double[] time(String label, double megabytes, boolean countAllocation, Callable<Integer> load) throws Exception {
+        int users = load.call();
+        long[] nanos = new long[RUNS];
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long a0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            load.call();
+            nanos[i] = System.nanoTime() - t0;
+            allocated += allocatedBytes() - a0;
+        }
+        Arrays.sort(nanos);
+        double best = nanos[0] / 1e9, median = nanos[RUNS / 2] / 1e9;
+        double perByte = countAllocation && allocatedBytes() >= 0 ? allocated / (RUNS * megabytes * 1024 * 1024) : -1;
+        System.out.printf("%-12s %8d users  best %6.2f s  median %6.2f s  %7.1f MB/s  alloc %s%n",
+                label, users, best, median, megabytes / best,
+                perByte >= 0 ? String.format("%5.1f B per byte", perByte) : "    -");
+        return new double[] {best, perByte};
+    }
+
+    // Bytes allocated so far by this thread; -1 where the JVM cannot tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+            if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled()) {
+                return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    // -------- the CSV loader before CsvUserReader, kept as the baseline --------
+
+    private static List<User> legacyLoadUsers(File file) throws IOException {
+        List<User> users = new ArrayList<>();
+        if (!file.exists()) return users;
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            br.readLine(); // skip
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = splitCsv(line);
+                if (parts.length >= 5) {
+                    String name = unescape(parts[0]);
+                    int age = parseIntSafe(parts[1]);
+                    double weight = parseDoubleSafe(parts[2]);
+                    double height = parseDoubleSafe(parts[3]);
+                    String sex = unescape(parts[4]);
+                    User user = new User(name, age, weight, height, sex);
+                    if (parts.length >= 6) {
+                        String histRaw = unescapeField(parts[5]);
+                        try { parseHistoryIntoUser(histRaw, user); } catch (Exception ex) { /* ignore malformed history */ }
+                        try { user.recomputeDailyTotals(); } catch (Exception e) { /* ignore */ }
+                    }
+                    if (parts.length >= 7) user.setDailyCalorieGoal(parseIntSafe(unescapeField(parts[6])));
+                    if (parts.length >= 8) user.setWeightGoalKg(parseDoubleSafe(unescapeField(parts[7])));
+                    if (parts.length >= 9) user.setAvatarPath(unescapeField(parts[8]));
+                    if (parts.length >= 10) user.setDailyWaterGoalMl(parseIntSafe(unescapeField(parts[9])));
+                    if (parts.length >= 11) {
+                        List<WaterRecord> waterRecords = new ArrayList<>();
+                        for (String rec : parts[10].split(";")) {
+                            if (rec.trim().isEmpty()) continue;
+                            String[] wparts = rec.split("\\|");
+                            if (wparts.length == 2) {
+                                try {
+                                    LocalDate date = LocalDate.parse(wparts[0]);
+                                    waterRecords.add(new WaterRecord(Integer.parseInt(wparts[1]), date.atStartOfDay()));
+                                } catch (Exception e) { /* skip invalid */ }
+                            }
+                        }
+                        user.setWaterRecords(waterRecords);
+                    }
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    private static int parseIntSafe(String s) {
+        try { return Integer.parseInt(s.trim()); } catch (Exception e) { return 0; }
+    }
+
+    private static double parseDoubleSafe(String s) {
+        try { return Double.parseDouble(s.trim()); } catch (Exception e) { return 0.0; }
+    }
+
+    private static String unescape(String s) {
+        if (s == null) return "";
+        return s.replace("\\,", ",");
+    }
+
+    private static String unescapeField(String s) {
+        if (s == null) return "";
+        StringBuilder sb = new StringBuilder();
+        boolean esc = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (esc) { sb.append(c); esc = false; }
+            else if (c == '\\') esc = true;
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static void parseHistoryIntoUser(String histRaw, User user) {
+        if (histRaw == null || histRaw.isEmpty()) return;
+        StringBuilder cur = new StringBuilder();
+        boolean esc = false;
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < histRaw.length(); i++) {
+            char c = histRaw.charAt(i);
+            if (esc) { cur.append(c); esc = false; }
+            else if (c == '\\') esc = true;
+            else if (c == ';') { entries.add(cur.toString()); cur.setLength(0); }
+            else cur.append(c);
+        }
+        if (cur.length() > 0) entries.add(cur.toString());
+        for (String ent : entries) {
+            // split by unescaped '|'
+            StringBuilder part = new StringBuilder();
+            List<String> parts = new ArrayList<>();
+            esc = false;
+            for (int i = 0; i < ent.length(); i++) {
+                char c = ent.charAt(i);
+                if (esc) { part.append(c); esc = false; }
+                else if (c == '\\') esc = true;
+                else if (c == '|') { parts.add(part.toString()); part.setLength(0); }
+                else part.append(c);
+            }
+            if (part.length() > 0) parts.add(part.toString());
+            if (parts.size() >= 3) {
+                String name = unescapeField(parts.get(0));
+                double cal = parseDoubleSafe(unescapeField(parts.get(1)));
+                long ts;
+                try { ts = Long.parseLong(unescapeField(parts.get(2))); } catch (Exception ex) { ts = System.currentTimeMillis(); }
+                user.addExerciseEntry(new ExerciseEntry(name, cal, ts));
+            }
+        }
+    }
+
+    private static String[] splitCsv(String line) {
+        // simple split that handles escaped commas \,
+        List<String> parts = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean escape = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (escape) {
+                cur.append(c);
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == ',') {
+                parts.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        parts.add(cur.toString());
+        return parts.toArray(new String[0]);
+    }
+}
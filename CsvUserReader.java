@@ -0,0 +1,450 @@
+package fitnesstracker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass, cursor-based reader for the fitness_users.csv layout written by FitnessDataManager.
+ *
+ * Decodes the file straight from a reusable char buffer: numbers are parsed from the decoded
+ * chars and Strings are only created for names (exercise and sex names are shared through a
+ * small intern table). The history field is decoded while it is being read, so no per-line,
+ * per-field, per-entry or per-part Strings or lists are allocated.
+ *
+ * Results are identical to the previous split/unescape based loader, including its handling of
+ * nested escapes: a line is split on unescaped ',' (one escape level), the history field is
+ * unescaped once more, then split on ';' and '|' (one level each) and every part is unescaped
+ * again. Number fields fall back to the JDK parsers whenever they are not plain decimals.
+ */
+public class CsvUserReader implements Closeable {
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15; // < 2^53, so m / 10^f rounds exactly once
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final Reader in;
+    private final char[] buf = new char[1 << 16];
+    private int pos, limit;
+    private boolean eof;
+    private boolean skipLF;
+
+    // level-1 decoded chars of the current (non-history) field
+    private char[] field = new char[128];
+    private int fieldLen;
+
+    // current line state
+    private int fieldIndex;
+    private User user;
+    private String name, sex;
+    private int age;
+    private double weight, height;
+
+    // history decoding state, one escape flag per nesting level
+    private boolean esc2, esc3, esc4, esc5;
+    private char[] part = new char[64];
+    private int partLen, partRawLen, partIdx;
+    private int entryId;
+    private double entryCal;
+    private long entryTs;
+
+    private final NameTable names = new NameTable();
+
+    /**
+     * @param in         source positioned at the header line, or at the first user line
+     * @param skipHeader whether the first line is the CSV header
+     */
+    public CsvUserReader(Reader in, boolean skipHeader) throws IOException {
+        this.in = in;
+        if (skipHeader) skipLine();
+    }
+
+    public CsvUserReader(Reader in) throws IOException {
+        this(in, true);
+    }
+
+    // Returns the next user, or null at end of input
+    public User next() throws IOException {
+        while (true) {
+            int r = readLine();
+            if (r < 0) return null;
+            if (r > 0) return user;
+        }
+    }
+
+    // Read every remaining user
+    public List<User> readAll() throws IOException {
+        List<User> users = new ArrayList<>();
+        User u;
+        while ((u = next()) != null) users.add(u);
+        return users;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // -------- line level --------
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int n;
+        do { n = in.read(buf, 0, buf.length); } while (n == 0);
+        if (n < 0) { eof = true; return false; }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    // Same line terminators as BufferedReader.readLine: \n, \r or \r\n
+    private boolean startLine() throws IOException {
+        if (pos >= limit && !fill()) return false;
+        if (skipLF) {
+            skipLF = false;
+            if (buf[pos] == '\n') {
+                pos++;
+                if (pos >= limit && !fill()) return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipLine() throws IOException {
+        if (!startLine()) return;
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
+            if (c == '\n') return;
+            if (c == '\r') { skipLF = true; return; }
+        }
+    }
+
+    /**
+     * Decode one line. Returns -1 at end of input, 1 if the line produced a user
+     * and 0 if it was too short to hold one.
+     */
+    private int readLine() throws IOException {
+        if (!startLine()) return -1;
+        fieldIndex = 0;
+        fieldLen = 0;
+        user = null;
+        boolean esc = false;
+        while (pos < limit || fill()) {
+            char c = buf[pos++];
+            if (c == '\n') break;
+            if (c == '\r') { skipLF = true; break; }
+            if (esc) {
+                esc = false;
+            } else if (c == '\\') {
+                esc = true;
+                continue;
+            } else if (c == ',') {
+                endField();
+                fieldIndex++;
+                fieldLen = 0;
+                continue;
+            }
+            if (fieldIndex == 5) historyChar(c);
+            else appendField(c);
+        }
+        endField();
+        return user != null ? 1 : 0;
+    }
+
+    private void appendField(char c) {
+        if (fieldIndex > 10) return; // ignored columns
+        if (fieldLen == field.length) field = Arrays.copyOf(field, fieldLen * 2);
+        field[fieldLen++] = c;
+    }
+
+    // Columns: name,age,weightKg,heightCm,sex,history,dailyCalorieGoal,weightGoalKg,avatarPath,dailyWaterGoalMl,waterRecords
+    private void endField() {
+        switch (fieldIndex) {
+            case 0: name = unescapeComma(); break;
+            case 1: age = parseIntSafe(field, 0, fieldLen); break;
+            case 2: weight = parseDoubleSafe(field, 0, fieldLen); break;
+            case 3: height = parseDoubleSafe(field, 0, fieldLen); break;
+            case 4:
+                unescapeCommaInPlace();
+                sex = names.intern(field, 0, fieldLen);
+                user = new User(name, age, weight, height, sex);
+                esc2 = esc3 = false;
+                resetEntry();
+                break;
+            case 5: endHistory(); break;
+            case 6: unescapeFieldInPlace(); user.setDailyCalorieGoal(parseIntSafe(field, 0, fieldLen)); break;
+            case 7: unescapeFieldInPlace(); user.setWeightGoalKg(parseDoubleSafe(field, 0, fieldLen)); break;
+            case 8: unescapeFieldInPlace(); user.setAvatarPath(new String(field, 0, fieldLen)); break;
+            case 9: unescapeFieldInPlace(); user.setDailyWaterGoalMl(parseIntSafe(field, 0, fieldLen)); break;
+            case 10: user.setWaterRecords(parseWaterRecords(field, 0, fieldLen)); break;
+            default: break;
+        }
+    }
+
+    // Name and sex columns only turn "\," into ","
+    private String unescapeComma() {
+        unescapeCommaInPlace();
+        return new String(field, 0, fieldLen);
+    }
+
+    private void unescapeCommaInPlace() {
+        int j = 0;
+        for (int i = 0; i < fieldLen; i++) {
+            char c = field[i];
+            if (c == '\\' && i + 1 < fieldLen && field[i + 1] == ',') { c = ','; i++; }
+            field[j++] = c;
+        }
+        fieldLen = j;
+    }
+
+    // Decoding only ever shrinks the text, so it can be done in place
+    private void unescapeFieldInPlace() {
+        int j = 0;
+        boolean esc = false;
+        for (int i = 0; i < fieldLen; i++) {
+            char c = field[i];
+            if (esc) { field[j++] = c; esc = false; }
+            else if (c == '\\') esc = true;
+            else field[j++] = c;
+        }
+        fieldLen = j;
+    }
+
+    // -------- history: entries separated by ';', parts by '|' --------
+
+    private void historyChar(char c) {
+        // level 2: the history column is unescaped as a whole
+        if (esc2) esc2 = false;
+        else if (c == '\\') { esc2 = true; return; }
+        // level 3: entry separator
+        if (esc3) esc3 = false;
+        else if (c == '\\') { esc3 = true; return; }
+        else if (c == ';') { endEntry(); return; }
+        // level 4: part separator
+        if (esc4) esc4 = false;
+        else if (c == '\\') { esc4 = true; return; }
+        else if (c == '|') { endPart(); return; }
+        // level 5: each part is unescaped once more
+        partRawLen++;
+        if (esc5) esc5 = false;
+        else if (c == '\\') { esc5 = true; return; }
+        if (partIdx > 2) return;
+        if (partLen == part.length) part = Arrays.copyOf(part, partLen * 2);
+        part[partLen++] = c;
+    }
+
+    private void endPart() {
+        switch (partIdx) {
+            case 0: entryId = ExerciseCatalog.idOf(names.intern(part, 0, partLen)); break;
+            case 1: entryCal = parseDoubleSafe(part, 0, partLen); break;
+            case 2:
+                try { entryTs = parseLong(part, 0, partLen); }
+                catch (NumberFormatException ex) { entryTs = System.currentTimeMillis(); }
+                break;
+            default: break;
+        }
+        partIdx++;
+        partLen = 0;
+        partRawLen = 0;
+        esc5 = false;
+    }
+
+    private void endEntry() {
+        // an empty trailing part does not count as a part
+        if (partRawLen > 0) endPart();
+        if (partIdx >= 3) user.addExerciseEntry(entryId, entryCal, entryTs);
+        resetEntry();
+    }
+
+    private void endHistory() {
+        endEntry();
+        esc2 = esc3 = false;
+    }
+
+    private void resetEntry() {
+        partIdx = 0;
+        partLen = 0;
+        partRawLen = 0;
+        esc4 = esc5 = false;
+    }
+
+    // -------- water records: date|amount entries separated by ';' (no escaping) --------
+
+    private static List<WaterRecord> parseWaterRecords(char[] a, int off, int len) {
+        List<WaterRecord> records = new ArrayList<>();
+        int end = off + len;
+        int start = off;
+        for (int i = off; i <= end; i++) {
+            if (i == end || a[i] == ';') {
+                parseWaterRecord(a, start, i, records);
+                start = i + 1;
+            }
+        }
+        return records;
+    }
+
+    private static void parseWaterRecord(char[] a, int from, int to, List<WaterRecord> out) {
+        boolean blank = true;
+        for (int i = from; i < to; i++) if (a[i] > ' ') { blank = false; break; }
+        if (blank) return;
+        // must split into exactly two parts once trailing empty parts are dropped
+        int tokens = 0, lastNonEmpty = -1;
+        int s0 = from, e0 = to, s1 = to, e1 = to;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || a[i] == '|') {
+                if (tokens == 0) { s0 = start; e0 = i; }
+                else if (tokens == 1) { s1 = start; e1 = i; }
+                if (i > start) lastNonEmpty = tokens;
+                tokens++;
+                start = i + 1;
+            }
+        }
+        if (lastNonEmpty != 1) return;
+        try {
+            LocalDate date = parseDate(a, s0, e0);
+            int amount = parseInt(a, s1, e1 - s1);
+            out.add(new WaterRecord(amount, date.atStartOfDay()));
+        } catch (RuntimeException e) { /* skip invalid */ }
+    }
+
+    private static LocalDate parseDate(char[] a, int from, int to) {
+        if (to - from == 10 && a[from + 4] == '-' && a[from + 7] == '-'
+                && digits(a, from, 4) && digits(a, from + 5, 2) && digits(a, from + 8, 2)) {
+            return LocalDate.of(digitValue(a, from, 4), digitValue(a, from + 5, 2), digitValue(a, from + 8, 2));
+        }
+        return LocalDate.parse(new String(a, from, to - from));
+    }
+
+    private static boolean digits(char[] a, int from, int n) {
+        for (int i = from; i < from + n; i++) if (a[i] < '0' || a[i] > '9') return false;
+        return true;
+    }
+
+    private static int digitValue(char[] a, int from, int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) v = v * 10 + (a[i] - '0');
+        return v;
+    }
+
+    // -------- numbers --------
+
+    // Integer.parseInt(s.trim()), 0 on failure
+    static int parseIntSafe(char[] a, int off, int len) {
+        int from = off, to = off + len;
+        while (from < to && a[from] <= ' ') from++;
+        while (to > from && a[to - 1] <= ' ') to--;
+        try { return parseInt(a, from, to - from); } catch (NumberFormatException e) { return 0; }
+    }
+
+    // Integer.parseInt without trimming; plain ASCII numbers are handled without a String
+    static int parseInt(char[] a, int off, int len) {
+        int i = off, end = off + len;
+        boolean neg = false;
+        if (i < end && (a[i] == '-' || a[i] == '+')) { neg = a[i] == '-'; i++; }
+        int n = end - i;
+        if (n > 0 && n <= 9 && digits(a, i, n)) {
+            int v = digitValue(a, i, n);
+            return neg ? -v : v;
+        }
+        return Integer.parseInt(new String(a, off, len));
+    }
+
+    // Long.parseLong without trimming
+    static long parseLong(char[] a, int off, int len) {
+        int i = off, end = off + len;
+        boolean neg = false;
+        if (i < end && (a[i] == '-' || a[i] == '+')) { neg = a[i] == '-'; i++; }
+        int n = end - i;
+        if (n > 0 && n <= 18 && digits(a, i, n)) {
+            long v = 0;
+            for (; i < end; i++) v = v * 10 + (a[i] - '0');
+            return neg ? -v : v;
+        }
+        return Long.parseLong(new String(a, off, len));
+    }
+
+    // Double.parseDouble(s.trim()), 0.0 on failure
+    static double parseDoubleSafe(char[] a, int off, int len) {
+        int from = off, to = off + len;
+        while (from < to && a[from] <= ' ') from++;
+        while (to > from && a[to - 1] <= ' ') to--;
+        // fast path: [sign] digits [. digits] with few enough digits to be exact
+        int i = from;
+        boolean neg = false;
+        if (i < to && (a[i] == '-' || a[i] == '+')) { neg = a[i] == '-'; i++; }
+        long mantissa = 0;
+        int digitCount = 0, fractionDigits = 0;
+        boolean dot = false, fast = true;
+        for (; i < to; i++) {
+            char c = a[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digitCount++;
+                if (dot) fractionDigits++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                fast = false;
+                break;
+            }
+        }
+        if (fast && digitCount > 0 && digitCount <= MAX_FAST_DOUBLE_DIGITS) {
+            double v = fractionDigits == 0 ? (double) mantissa : mantissa / POW10[fractionDigits];
+            return neg ? -v : v;
+        }
+        try { return Double.parseDouble(new String(a, from, to - from)); } catch (Exception e) { return 0.0; }
+    }
+
+    /**
+     * Small open-addressing table that returns the same String instance for equal char ranges,
+     * so repeated exercise names do not each get their own copy.
+     */
+    static final class NameTable {
+        private static final int MAX_SIZE = 4096;
+        private String[] table = new String[64];
+        private int size;
+
+        String intern(char[] a, int off, int len) {
+            int h = 0;
+            for (int i = off; i < off + len; i++) h = 31 * h + a[i];
+            int mask = table.length - 1;
+            int idx = (h ^ (h >>> 16)) & mask;
+            while (true) {
+                String s = table[idx];
+                if (s == null) break;
+                if (s.length() == len && s.hashCode() == h && matches(s, a, off, len)) return s;
+                idx = (idx + 1) & mask;
+            }
+            String s = new String(a, off, len);
+            if (size >= MAX_SIZE) return s;
+            table[idx] = s;
+            if (++size * 2 > table.length) rehash();
+            return s;
+        }
+
+        private static boolean matches(String s, char[] a, int off, int len) {
+            for (int i = 0; i < len; i++) if (s.charAt(i) != a[off + i]) return false;
+            return true;
+        }
+
+        private void rehash() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String s : old) {
+                if (s == null) continue;
+                int h = s.hashCode();
+                int idx = (h ^ (h >>> 16)) & mask;
+                while (table[idx] != null) idx = (idx + 1) & mask;
+                table[idx] = s;
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package fitnesstracker;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calories burned per day, keyed by epoch day (days since 1970-01-01 in the local time zone).
+ *
+ * Days are kept in a dense window of fixed-size chunks that grows in either direction as entries
+ * arrive; chunks without entries are not allocated. An entry far outside the window (more than a
+ * few years away from the bulk of the data, e.g. a bad timestamp) goes to a small sparse table
+ * instead, so one outlier does not allocate a huge window. Neither path boxes values or creates
+ * LocalDate objects.
+ *
+ * Range sums use Fenwick (binary indexed) trees at two levels: one inside each chunk over its
+ * days, and one over the chunk totals. sum(from, to) therefore costs O(log days) whatever the
+ * width of the range; the sparse table is scanned, but only holds outliers. Growing the window
+ * only moves chunk references and rebuilds the tree over the chunk totals. Reads never write,
+ * so a snapshot can be read from another thread. A range without entries sums to exactly 0.
+ *
+ * snapshot() is O(1) and copy-on-write per chunk: both instances share the chunks, and a write
+ * copies only the chunk it touches, plus (once per snapshot) the chunk directory and the sparse
+ * table, which hold one reference per CHUNK days and the outliers respectively.
+ */
+public class DailyTotals {
+    // the dense window may always span this many days, regardless of how much data there is
+    private static final int MIN_DENSE_SPAN = 4 * 366;
+    // days per chunk; a power of two, so each chunk's Fenwick tree covers it exactly
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    // dense window: chunk k holds days [firstDay + k * CHUNK, firstDay + (k + 1) * CHUNK)
+    private long firstDay;
+    private Chunk[] chunks = new Chunk[0];
+    private int daysWithEntries;
+    // Fenwick trees over the chunk totals: chunkTree[k] covers chunks (k - lowbit(k), k], 1-based
+    private double[] chunkTree = new double[1];
+    private int[] chunkCountTree = new int[1];
+
+    // sparse overflow: open addressing on epoch day, counts[i] == 0 means the slot is free
+    private long[] sparseDays = new long[0];
+    private double[] sparseCalories = new double[0];
+    private int[] sparseCounts = new int[0];
+    private int sparseSize;
+
+    // chunks stamped with a different owner are shared with a snapshot; copy them before writing
+    private Object owner = new Object();
+    // the chunk directory, chunk trees and sparse table are shared with a snapshot
+    private boolean shared;
+
+    public void add(long epochDay, double kcal) {
+        if (shared) unshare();
+        if (!fitsDense(epochDay)) {
+            if (!growDense(epochDay)) {
+                addSparse(epochDay, kcal);
+                return;
+            }
+        }
+        int i = (int) (epochDay - firstDay);
+        int k = i >>> CHUNK_BITS;
+        Chunk c = writableChunk(k);
+        if (c.add(i & (CHUNK - 1), kcal, 1)) daysWithEntries++;
+        for (int j = k + 1; j < chunkTree.length; j += j & -j) {
+            chunkTree[j] += kcal;
+            chunkCountTree[j]++;
+        }
+    }
+
+    // Add an entry by its timestamp (epoch millis)
+    public void addAt(long timestampMillis, double kcal) {
+        add(epochDay(timestampMillis), kcal);
+    }
+
+    public double get(long epochDay) {
+        if (fitsDense(epochDay)) {
+            int i = (int) (epochDay - firstDay);
+            Chunk c = chunks[i >>> CHUNK_BITS];
+            return c == null ? 0.0 : c.calories[i & (CHUNK - 1)];
+        }
+        int slot = findSparse(epochDay);
+        return slot >= 0 ? sparseCalories[slot] : 0.0;
+    }
+
+    public double get(LocalDate date) {
+        return get(date.toEpochDay());
+    }
+
+    // Sum of days [fromDay, toDay], both inclusive
+    public double sum(long fromDay, long toDay) {
+        double total = 0.0;
+        if (chunks.length > 0) {
+            long from = Math.max(fromDay, firstDay);
+            long to = Math.min(toDay, windowEnd() - 1);
+            if (from <= to) {
+                int lo = (int) (from - firstDay), hi = (int) (to - firstDay) + 1;
+                // the difference of two prefix sums is not exactly 0 when nothing lies between them
+                if (prefixCount(hi) != prefixCount(lo)) total = prefixSum(hi) - prefixSum(lo);
+            }
+        }
+        for (int s = 0; s < sparseCounts.length; s++) {
+            if (sparseCounts[s] > 0 && sparseDays[s] >= fromDay && sparseDays[s] <= toDay) total += sparseCalories[s];
+        }
+        return total;
+    }
+
+    // Number of days that have at least one entry
+    public int dayCount() {
+        return daysWithEntries + sparseSize;
+    }
+
+    public void clear() {
+        chunks = new Chunk[0];
+        daysWithEntries = 0;
+        chunkTree = new double[1];
+        chunkCountTree = new int[1];
+        sparseDays = new long[0];
+        sparseCalories = new double[0];
+        sparseCounts = new int[0];
+        sparseSize = 0;
+        shared = false;
+    }
+
+    // O(1) point-in-time copy (copy-on-write per chunk)
+    public DailyTotals snapshot() {
+        DailyTotals c = new DailyTotals();
+        c.firstDay = firstDay;
+        c.chunks = chunks;
+        c.daysWithEntries = daysWithEntries;
+        c.chunkTree = chunkTree;
+        c.chunkCountTree = chunkCountTree;
+        c.sparseDays = sparseDays;
+        c.sparseCalories = sparseCalories;
+        c.sparseCounts = sparseCounts;
+        c.sparseSize = sparseSize;
+        c.shared = true;
+        // a new owner: every existing chunk now counts as shared on both sides
+        owner = new Object();
+        shared = true;
+        return c;
+    }
+
+    private void unshare() {
+        chunks = chunks.clone();
+        chunkTree = chunkTree.clone();
+        chunkCountTree = chunkCountTree.clone();
+        sparseDays = sparseDays.clone();
+        sparseCalories = sparseCalories.clone();
+        sparseCounts = sparseCounts.clone();
+        shared = false;
+    }
+
+    public DailyTotals copy() {
+        DailyTotals c = new DailyTotals();
+        c.firstDay = firstDay;
+        c.chunks = new Chunk[chunks.length];
+        for (int k = 0; k < chunks.length; k++) {
+            if (chunks[k] != null) c.chunks[k] = chunks[k].copy(c.owner);
+        }
+        c.daysWithEntries = daysWithEntries;
+        c.chunkTree = chunkTree.clone();
+        c.chunkCountTree = chunkCountTree.clone();
+        c.sparseDays = sparseDays.clone();
+        c.sparseCalories = sparseCalories.clone();
+        c.sparseCounts = sparseCounts.clone();
+        c.sparseSize = sparseSize;
+        return c;
+    }
+
+    // Days with entries as a map (boxes, so meant for display and export rather than hot paths)
+    public Map<LocalDate, Double> toMap() {
+        Map<LocalDate, Double> map = new HashMap<>(dayCount() * 2);
+        for (int k = 0; k < chunks.length; k++) {
+            Chunk c = chunks[k];
+            if (c == null) continue;
+            long base = firstDay + (long) k * CHUNK;
+            for (int i = 0; i < CHUNK; i++) {
+                if (c.counts[i] > 0) map.put(LocalDate.ofEpochDay(base + i), c.calories[i]);
+            }
+        }
+        for (int s = 0; s < sparseCounts.length; s++) {
+            if (sparseCounts[s] > 0) map.put(LocalDate.ofEpochDay(sparseDays[s]), sparseCalories[s]);
+        }
+        return map;
+    }
+
+    // -------- epoch day for a timestamp in the default time zone --------
+
+    // Offset of the default zone, valid for instants in [from, to) epoch seconds
+    private static final class OffsetWindow {
+        final ZoneId zone;
+        final long from, to;
+        final int offsetSeconds;
+
+        OffsetWindow(ZoneId zone, long from, long to, int offsetSeconds) {
+            this.zone = zone;
+            this.from = from;
+            this.to = to;
+            this.offsetSeconds = offsetSeconds;
+        }
+    }
+
+    private static volatile OffsetWindow offsetCache;
+
+    /**
+     * Local epoch day of a timestamp, same result as
+     * Instant.ofEpochMilli(ts).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay().
+     * The zone offset is cached for the stretch between two DST transitions, so most calls are
+     * just arithmetic. The default zone is captured on first use.
+     */
+    public static long epochDay(long timestampMillis) {
+        return Math.floorDiv(localEpochSecond(timestampMillis), 86400L);
+    }
+
+    // Seconds since 1970-01-01T00:00 local time (i.e. the local date-time read as if it were UTC)
+    public static long localEpochSecond(long timestampMillis) {
+        long sec = Math.floorDiv(timestampMillis, 1000L);
+        OffsetWindow w = offsetCache;
+        if (w == null || sec < w.from || sec >= w.to) w = offsetCache = window(w == null ? ZoneId.systemDefault() : w.zone, sec);
+        return sec + w.offsetSeconds;
+    }
+
+    private static OffsetWindow window(ZoneId zone, long sec) {
+        ZoneRules rules = zone.getRules();
+        Instant at = Instant.ofEpochSecond(sec);
+        ZoneOffset offset = rules.getOffset(at);
+        if (rules.isFixedOffset()) return new OffsetWindow(zone, Long.MIN_VALUE, Long.MAX_VALUE, offset.getTotalSeconds());
+        ZoneOffsetTransition prev = rules.previousTransition(at.plusSeconds(1));
+        ZoneOffsetTransition next = rules.nextTransition(at);
+        long from = prev == null ? Long.MIN_VALUE : prev.toEpochSecond();
+        long to = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+        return new OffsetWindow(zone, from, to, offset.getTotalSeconds());
+    }
+
+    // -------- dense window --------
+
+    // CHUNK consecutive days with a Fenwick tree over them, stamped with the instance that may write it
+    private static final class Chunk {
+        final double[] calories = new double[CHUNK];
+        final int[] counts = new int[CHUNK];
+        // tree[i] covers days (i - lowbit(i), i] of the chunk, 1-based; tree[CHUNK] is the chunk total
+        final double[] tree = new double[CHUNK + 1];
+        final int[] countTree = new int[CHUNK + 1];
+        final Object owner;
+
+        Chunk(Object owner) {
+            this.owner = owner;
+        }
+
+        // Returns true if day i had no entries before
+        boolean add(int i, double kcal, int n) {
+            boolean first = counts[i] == 0;
+            calories[i] += kcal;
+            counts[i] += n;
+            for (int j = i + 1; j <= CHUNK; j += j & -j) {
+                tree[j] += kcal;
+                countTree[j] += n;
+            }
+            return first;
+        }
+
+        double prefixSum(int n) {
+            double s = 0.0;
+            for (int i = n; i > 0; i -= i & -i) s += tree[i];
+            return s;
+        }
+
+        int prefixCount(int n) {
+            int s = 0;
+            for (int i = n; i > 0; i -= i & -i) s += countTree[i];
+            return s;
+        }
+
+        Chunk copy(Object newOwner) {
+            Chunk c = new Chunk(newOwner);
+            System.arraycopy(calories, 0, c.calories, 0, CHUNK);
+            System.arraycopy(counts, 0, c.counts, 0, CHUNK);
+            System.arraycopy(tree, 0, c.tree, 0, CHUNK + 1);
+            System.arraycopy(countTree, 0, c.countTree, 0, CHUNK + 1);
+            return c;
+        }
+    }
+
+    private long windowEnd() {
+        return firstDay + (long) chunks.length * CHUNK;
+    }
+
+    private boolean fitsDense(long day) {
+        return day >= firstDay && day < windowEnd();
+    }
+
+    // Chunk k, allocated or copied so that this instance may write it
+    private Chunk writableChunk(int k) {
+        Chunk c = chunks[k];
+        if (c == null) c = chunks[k] = new Chunk(owner);
+        else if (c.owner != owner) c = chunks[k] = c.copy(owner);
+        return c;
+    }
+
+    // Extend the window to include day; false if that would make it too sparse
+    private boolean growDense(long day) {
+        if (chunks.length == 0) {
+            firstDay = day - CHUNK / 2;
+            chunks = new Chunk[1];
+            buildChunkTrees();
+            return true;
+        }
+        long lo = Math.min(firstDay, day);
+        long hi = Math.max(windowEnd(), day + 1);
+        long span = hi - lo;
+        if (span > Math.max(MIN_DENSE_SPAN, 8L * daysWithEntries)) return false;
+
+        // whole chunks, with some headroom on the side we grow towards; existing chunks keep their days
+        long needed = (span + CHUNK - 1) / CHUNK;
+        int n = (int) Math.min(Math.max(needed + needed / 2, chunks.length * 2L), Integer.MAX_VALUE / CHUNK);
+        int shift = day < firstDay ? n - chunks.length : 0;
+        Chunk[] c = new Chunk[n];
+        System.arraycopy(chunks, 0, c, shift, chunks.length);
+        firstDay -= (long) shift * CHUNK;
+        chunks = c;
+        if (sparseSize > 0) moveSparseIntoWindow();
+        buildChunkTrees();
+        return true;
+    }
+
+    // Linear-time Fenwick builds over the chunk totals
+    private void buildChunkTrees() {
+        double[] t = new double[chunks.length + 1];
+        int[] c = new int[chunks.length + 1];
+        for (int i = 1; i < t.length; i++) {
+            Chunk ch = chunks[i - 1];
+            if (ch != null) {
+                t[i] += ch.tree[CHUNK];
+                c[i] += ch.countTree[CHUNK];
+            }
+            int parent = i + (i & -i);
+            if (parent < t.length) {
+                t[parent] += t[i];
+                c[parent] += c[i];
+            }
+        }
+        chunkTree = t;
+        chunkCountTree = c;
+    }
+
+    // Sum of the first n days of the dense window
+    private double prefixSum(int n) {
+        int k = n >>> CHUNK_BITS;
+        double s = 0.0;
+        for (int i = k; i > 0; i -= i & -i) s += chunkTree[i];
+        int rest = n & (CHUNK - 1);
+        if (rest > 0 && chunks[k] != null) s += chunks[k].prefixSum(rest);
+        return s;
+    }
+
+    // Entries in the first n days of the dense window
+    private int prefixCount(int n) {
+        int k = n >>> CHUNK_BITS;
+        int s = 0;
+        for (int i = k; i > 0; i -= i & -i) s += chunkCountTree[i];
+        int rest = n & (CHUNK - 1);
+        if (rest > 0 && chunks[k] != null) s += chunks[k].prefixCount(rest);
+        return s;
+    }
+
+    // Sparse days now covered by the dense window move into it, so every day lives in one place.
+    // The chunk trees are rebuilt afterwards by the caller
+    private void moveSparseIntoWindow() {
+        boolean moved = false;
+        for (int s = 0; s < sparseCounts.length; s++) {
+            if (sparseCounts[s] == 0 || !fitsDense(sparseDays[s])) continue;
+            int i = (int) (sparseDays[s] - firstDay);
+            if (writableChunk(i >>> CHUNK_BITS).add(i & (CHUNK - 1), sparseCalories[s], sparseCounts[s])) daysWithEntries++;
+            sparseCounts[s] = 0;
+            sparseCalories[s] = 0.0;
+            sparseSize--;
+            moved = true;
+        }
+        // removing entries breaks the probe chains, so rebuild the table
+        if (moved) rehashSparse(sparseDays.length);
+    }
+
+    // -------- sparse overflow --------
+
+    private int findSparse(long day) {
+        if (sparseSize == 0) return -1;
+        int mask = sparseDays.length - 1;
+        for (int s = hash(day) & mask; sparseCounts[s] > 0; s = (s + 1) & mask) {
+            if (sparseDays[s] == day) return s;
+        }
+        return -1;
+    }
+
+    private void addSparse(long day, double kcal) {
+        if ((sparseSize + 1) * 2 > sparseDays.length) rehashSparse(Math.max(8, sparseDays.length * 2));
+        int mask = sparseDays.length - 1;
+        int s = hash(day) & mask;
+        while (sparseCounts[s] > 0 && sparseDays[s] != day) s = (s + 1) & mask;
+        if (sparseCounts[s] == 0) {
+            sparseDays[s] = day;
+            sparseSize++;
+        }
+        sparseCounts[s]++;
+        sparseCalories[s] += kcal;
+    }
+
+    private void rehashSparse(int capacity) {
+        long[] days = sparseDays;
+        double[] cal = sparseCalories;
+        int[] cnt = sparseCounts;
+        sparseDays = new long[capacity];
+        sparseCalories = new double[capacity];
+        sparseCounts = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < cnt.length; i++) {
+            if (cnt[i] == 0) continue;
+            int s = hash(days[i]) & mask;
+            while (sparseCounts[s] > 0) s = (s + 1) & mask;
+            sparseDays[s] = days[i];
+            sparseCalories[s] = cal[i];
+            sparseCounts[s] = cnt[i];
+        }
+    }
+
+    private static int hash(long day) {
+        long h = day * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,54 @@
+package fitnesstracker;
+
+/**
+ * Values GoalManager derives from a user's profile, goals and today's calories, computed together
+ * and cached on the user.
+ *
+ * An instance is stamped with the user's profile and history versions and the day it was computed
+ * for; GoalManager.metrics reuses it until one of those changes. Immutable.
+ */
+public final class DerivedMetrics {
+    private final int profileVersion;
+    private final int historyVersion;
+    private final long epochDay;
+
+    private final double bmi;
+    private final int bmr;
+    private final int maintenanceCalories;
+    private final int burnedToday;
+    private final int remainingToGoal;
+
+    DerivedMetrics(int profileVersion, int historyVersion, long epochDay,
+                   double bmi, int bmr, int maintenanceCalories, int burnedToday, int remainingToGoal) {
+        this.profileVersion = profileVersion;
+        this.historyVersion = historyVersion;
+        this.epochDay = epochDay;
+        this.bmi = bmi;
+        this.bmr = bmr;
+        this.maintenanceCalories = maintenanceCalories;
+        this.burnedToday = burnedToday;
+        this.remainingToGoal = remainingToGoal;
+    }
+
+    // Still valid for this user state on this day
+    boolean isCurrent(User user, long today) {
+        return epochDay == today && profileVersion == user.getProfileVersion() && historyVersion == user.getHistoryVersion();
+    }
+
+    int profileVersion() { return profileVersion; }
+
+    public double getBmi() { return bmi; }
+
+    public int getBmr() { return bmr; }
+
+    public int getMaintenanceCalories() { return maintenanceCalories; }
+
+    public int getRecommendedIntake(int deficit) { return maintenanceCalories - deficit; }
+
+    public int getCaloriesBurnedToday() { return burnedToday; }
+
+    public int getRemainingToGoal() { return remainingToGoal; }
+
+    // Epoch day the "today" values refer to
+    public long getEpochDay() { return epochDay; }
+}
@@ -0,0 +1,94 @@
+package fitnesstracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide catalog of exercise names, each with a small int id.
+ *
+ * The built-in exercises are registered first, so their ids (0..n-1) never change. Names that
+ * only appear in loaded data are added on first use and get the next free id; those ids are
+ * only valid for the running process, which is why the data files still store names.
+ * Every entry with the same name shares the catalog's single String instance.
+ *
+ * Lookups are lock-free and safe from any thread (the parallel loader registers names
+ * concurrently); registration of new names is synchronized.
+ */
+public final class ExerciseCatalog {
+    // id used for entries without an exercise name
+    public static final int NO_EXERCISE = -1;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // index = id; slots are written before the id is published in the map
+    private static volatile String[] names = new String[16];
+    private static volatile int count;
+    // built-in exercise for each id, null for names that only come from data files
+    private static volatile Exercise[] exercises = new Exercise[0];
+
+    private static final List<Exercise> DEFAULTS;
+
+    static {
+        List<Exercise> list = new ArrayList<>();
+        list.add(new Exercise("Walking (3.0 mph)", 3.3));
+        list.add(new Exercise("Jogging (6 mph)", 10.0));
+        list.add(new Exercise("Running (8 mph)", 11.8));
+        list.add(new Exercise("Cycling (moderate)", 8.0));
+        list.add(new Exercise("Swimming (moderate)", 6.0));
+        list.add(new Exercise("Yoga (Hatha)", 2.5));
+        list.add(new Exercise("Strength training (moderate)", 6.0));
+        for (Exercise e : list) register(e.getName(), e);
+        DEFAULTS = Collections.unmodifiableList(list);
+    }
+
+    private ExerciseCatalog() { }
+
+    // Exercises offered in the GUI, in display order
+    public static List<Exercise> defaultExercises() {
+        return DEFAULTS;
+    }
+
+    // Id for the name, registering it if it is new (NO_EXERCISE for null)
+    public static int idOf(String name) {
+        if (name == null) return NO_EXERCISE;
+        Integer id = ids.get(name);
+        return id != null ? id : register(name, null);
+    }
+
+    public static String nameOf(int id) {
+        return id == NO_EXERCISE ? null : names[id];
+    }
+
+    // Built-in exercise (with its MET value) for the id, or null if the name is not a built-in one
+    public static Exercise exercise(int id) {
+        if (id == NO_EXERCISE) return null;
+        Exercise[] ex = exercises;
+        return id < ex.length ? ex[id] : null;
+    }
+
+    // Number of registered names; valid ids run from 0 to size() - 1
+    public static int size() {
+        return count;
+    }
+
+    private static synchronized int register(String name, Exercise exercise) {
+        Integer existing = ids.get(name);
+        if (existing != null) return existing;
+        int id = count;
+        String[] n = names;
+        if (id == n.length) n = Arrays.copyOf(n, id * 2);
+        n[id] = name;
+        names = n;
+        if (exercise != null) {
+            Exercise[] ex = Arrays.copyOf(exercises, id + 1);
+            ex[id] = exercise;
+            exercises = ex;
+        }
+        count = id + 1;
+        // publish the id only once the name can be resolved
+        ids.put(name, id);
+        return id;
+    }
+}
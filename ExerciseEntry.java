@@ -1,18 +1,26 @@
 package fitnesstracker;
 
 public class ExerciseEntry {
-    private String exerciseName;
+    private int exerciseId; // ExerciseCatalog id
     private double calories;
     private long timestamp;
 
     public ExerciseEntry(String exerciseName, double calories, long timestamp) {
-        this.exerciseName = exerciseName;
+        this(ExerciseCatalog.idOf(exerciseName), calories, timestamp);
+    }
+
+    public ExerciseEntry(int exerciseId, double calories, long timestamp) {
+        this.exerciseId = exerciseId;
         this.calories = calories;
         this.timestamp = timestamp;
     }
 
     public String getExerciseName() {
-        return exerciseName;
+        return ExerciseCatalog.nameOf(exerciseId);
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
     }
 
     public double getCalories() {
@@ -25,6 +33,6 @@ public class ExerciseEntry {
 
     @Override
     public String toString() {
-        return exerciseName + " - " + String.format("%.1f kcal", calories);
+        return getExerciseName() + " - " + String.format("%.1f kcal", calories);
     }
 }
@@ -0,0 +1,373 @@
+package fitnesstracker;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Columnar exercise history: one primitive array per field instead of one ExerciseEntry object
+ * per entry. Exercises are stored as ExerciseCatalog ids.
+ *
+ * Entries are kept in timestamp order (entries with equal timestamps stay in insertion order).
+ * An entry at or after the newest one is appended to a sorted run in O(1). An older entry goes
+ * into a small sorted tail instead, at O(tail) per insert; the tail holds at most about sqrt(n)
+ * entries and is merged into the run when it is full, so an out-of-order insert costs O(sqrt n)
+ * amortized rather than O(n). Reads treat the run and the tail as one ordered sequence and never
+ * move data: range lookups are binary searches over both, O(log n + k) for k returned entries.
+ *
+ * ExerciseEntry objects are only created on demand by get(i) and the list views; bulk readers
+ * should use cursor(), which walks the columns without allocating per entry.
+ *
+ * List views, cursors and snapshot() are O(1) point-in-time views: they share the run arrays
+ * but only read the prefix that existed when they were created. The run is never changed below
+ * that prefix afterwards (appends go past it, merges and clear() switch to new arrays), and the
+ * tail is copied before it changes while a view still shares it, so views stay consistent while
+ * the history keeps growing and never throw on concurrent appends.
+ */
+public class ExerciseHistory {
+    private static final int INITIAL_CAPACITY = 8;
+    // the tail may always hold this many entries before it is merged
+    private static final int MIN_TAIL = 64;
+
+    // sorted run
+    private long[] timestamps;
+    private double[] calories;
+    private int[] exerciseIds;
+    private int runSize;
+    // entries older than the end of the run, sorted; tailPos[j] is the position of tail entry j
+    // in timestamp order over run and tail together
+    private long[] tailTimestamps = new long[0];
+    private double[] tailCalories = new double[0];
+    private int[] tailIds = new int[0];
+    private int[] tailPos = new int[0];
+    private int tailSize;
+    // run arrays are shared with another instance (snapshot); copy them before writing
+    private boolean shared;
+    // tail arrays are shared with a view or snapshot; copy them before changing them
+    private boolean tailShared;
+
+    public ExerciseHistory() {
+        timestamps = new long[INITIAL_CAPACITY];
+        calories = new double[INITIAL_CAPACITY];
+        exerciseIds = new int[INITIAL_CAPACITY];
+    }
+
+    public void add(int exerciseId, double kcal, long timestamp) {
+        // every tail entry is older than the end of the run, so appends to the run keep the order
+        if (runSize > 0 && timestamp < timestamps[runSize - 1]) {
+            addToTail(exerciseId, kcal, timestamp);
+            return;
+        }
+        if (shared) unshare();
+        if (runSize == timestamps.length) grow(runSize + 1);
+        timestamps[runSize] = timestamp;
+        calories[runSize] = kcal;
+        exerciseIds[runSize] = exerciseId;
+        runSize++;
+    }
+
+    public void add(ExerciseEntry e) {
+        add(e.getExerciseId(), e.getCalories(), e.getTimestamp());
+    }
+
+    public int size() { return runSize + tailSize; }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    // Entries are indexed in timestamp order
+    public long getTimestamp(int i) {
+        int at = locate(i);
+        return at >= 0 ? timestamps[at] : tailTimestamps[~at];
+    }
+
+    public double getCalories(int i) {
+        int at = locate(i);
+        return at >= 0 ? calories[at] : tailCalories[~at];
+    }
+
+    public int getExerciseId(int i) {
+        int at = locate(i);
+        return at >= 0 ? exerciseIds[at] : tailIds[~at];
+    }
+
+    public String getExerciseName(int i) { return ExerciseCatalog.nameOf(getExerciseId(i)); }
+
+    // Materialize entry i as an object
+    public ExerciseEntry get(int i) {
+        int at = locate(i);
+        if (at >= 0) return new ExerciseEntry(exerciseIds[at], calories[at], timestamps[at]);
+        return new ExerciseEntry(tailIds[~at], tailCalories[~at], tailTimestamps[~at]);
+    }
+
+    public void clear() {
+        // fresh arrays: views and snapshots may still be reading the old ones
+        timestamps = new long[INITIAL_CAPACITY];
+        calories = new double[INITIAL_CAPACITY];
+        exerciseIds = new int[INITIAL_CAPACITY];
+        runSize = 0;
+        tailTimestamps = new long[0];
+        tailCalories = new double[0];
+        tailIds = new int[0];
+        tailPos = new int[0];
+        tailSize = 0;
+        shared = false;
+        tailShared = false;
+    }
+
+    // Index of the first entry with timestamp >= timestampMillis (size() if there is none)
+    public int indexAtOrAfter(long timestampMillis) {
+        return lowerBound(timestamps, runSize, timestampMillis) + lowerBound(tailTimestamps, tailSize, timestampMillis);
+    }
+
+    // Entries with fromMillis <= timestamp < toMillis, oldest first
+    public List<ExerciseEntry> between(long fromMillis, long toMillis) {
+        int from = indexAtOrAfter(fromMillis);
+        int to = Math.max(from, indexAtOrAfter(toMillis));
+        return asList().subList(from, to);
+    }
+
+    // The n most recent entries, newest first
+    public List<ExerciseEntry> latest(int n) {
+        List<ExerciseEntry> all = asList();
+        int count = Math.max(0, Math.min(n, all.size()));
+        int end = all.size();
+        return new AbstractList<ExerciseEntry>() {
+            @Override public ExerciseEntry get(int index) {
+                if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+                return all.get(end - 1 - index);
+            }
+            @Override public int size() { return count; }
+        };
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > timestamps.length) grow(capacity);
+    }
+
+    /**
+     * O(1) point-in-time copy that shares the column arrays. Either side copies the arrays
+     * before its first write, so both stay independent.
+     */
+    public ExerciseHistory snapshot() {
+        ExerciseHistory c = new ExerciseHistory(timestamps, calories, exerciseIds, runSize);
+        c.tailTimestamps = tailTimestamps;
+        c.tailCalories = tailCalories;
+        c.tailIds = tailIds;
+        c.tailPos = tailPos;
+        c.tailSize = tailSize;
+        c.shared = true;
+        c.tailShared = true;
+        if (tailSize > 0) tailShared = true;
+        return c;
+    }
+
+    private ExerciseHistory(long[] timestamps, double[] calories, int[] exerciseIds, int runSize) {
+        this.timestamps = timestamps;
+        this.calories = calories;
+        this.exerciseIds = exerciseIds;
+        this.runSize = runSize;
+    }
+
+    // Independent copy with the tail merged in, trimmed to size
+    public ExerciseHistory copy() {
+        int n = size();
+        int cap = Math.max(n, INITIAL_CAPACITY);
+        ExerciseHistory c = new ExerciseHistory(new long[cap], new double[cap], new int[cap], n);
+        mergeInto(c.timestamps, c.calories, c.exerciseIds);
+        return c;
+    }
+
+    // Read-only List view; entries are created as they are accessed
+    public List<ExerciseEntry> asList() {
+        return new EntryList(snapshot());
+    }
+
+    public Cursor cursor() {
+        return cursor(0, size());
+    }
+
+    // Cursor over entries [fromIndex, toIndex)
+    public Cursor cursor(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range: " + fromIndex + ".." + toIndex + ", size: " + size());
+        }
+        return new Cursor(snapshot(), fromIndex, toIndex);
+    }
+
+    /**
+     * Forward-only iteration over the columns:
+     * <pre>
+     *   for (ExerciseHistory.Cursor c = h.cursor(); c.next(); ) total += c.calories();
+     * </pre>
+     */
+    public static final class Cursor {
+        private final ExerciseHistory h;
+        private final int start, end;
+        private int pos;
+        // next run and tail entries to visit, and the current entry (run index, or ~tail index)
+        private int run, tail, current;
+
+        private Cursor(ExerciseHistory h, int start, int end) {
+            this.h = h;
+            this.start = start;
+            this.end = end;
+            this.pos = start - 1;
+            this.tail = h.tailSize == 0 ? 0 : insertionPoint(h.tailPos, h.tailSize, start);
+            this.run = start - tail;
+        }
+
+        public boolean next() {
+            if (pos + 1 >= end) { pos = end; return false; }
+            pos++;
+            if (tail < h.tailSize && h.tailPos[tail] == pos) current = ~tail++;
+            else current = run++;
+            return true;
+        }
+
+        public int index() { return pos; }
+        public long timestamp() { int c = current(); return c >= 0 ? h.timestamps[c] : h.tailTimestamps[~c]; }
+        public double calories() { int c = current(); return c >= 0 ? h.calories[c] : h.tailCalories[~c]; }
+        public int exerciseId() { int c = current(); return c >= 0 ? h.exerciseIds[c] : h.tailIds[~c]; }
+        public String exerciseName() { return ExerciseCatalog.nameOf(exerciseId()); }
+
+        private int current() {
+            if (pos < start || pos >= end) throw new NoSuchElementException();
+            return current;
+        }
+    }
+
+    private static final class EntryList extends AbstractList<ExerciseEntry> implements RandomAccess {
+        private final ExerciseHistory h;
+
+        EntryList(ExerciseHistory h) {
+            this.h = h;
+        }
+
+        @Override public ExerciseEntry get(int index) { return h.get(index); }
+
+        @Override public int size() { return h.size(); }
+    }
+
+    // -------- out-of-order tail --------
+
+    // Insert after any tail entries with the same timestamp; merge the tail into the run when full
+    private void addToTail(int exerciseId, double kcal, long timestamp) {
+        if (tailSize >= Math.max(MIN_TAIL, (int) Math.sqrt(runSize))) mergeTail();
+        if (tailShared || tailSize == tailTimestamps.length) copyTail(Math.max(tailSize + 1, Math.min(tailSize * 2, tailSize + MIN_TAIL)));
+        int j = upperBound(tailTimestamps, tailSize, timestamp);
+        int move = tailSize - j;
+        System.arraycopy(tailTimestamps, j, tailTimestamps, j + 1, move);
+        System.arraycopy(tailCalories, j, tailCalories, j + 1, move);
+        System.arraycopy(tailIds, j, tailIds, j + 1, move);
+        System.arraycopy(tailPos, j, tailPos, j + 1, move);
+        for (int k = j + 1; k <= tailSize; k++) tailPos[k]++;
+        tailTimestamps[j] = timestamp;
+        tailCalories[j] = kcal;
+        tailIds[j] = exerciseId;
+        // run entries with the same timestamp were added earlier, so they come first
+        tailPos[j] = j + upperBound(timestamps, runSize, timestamp);
+        tailSize++;
+    }
+
+    // Merge run and tail into new run arrays (views keep reading the old ones)
+    private void mergeTail() {
+        int n = size();
+        int cap = Math.max(timestamps.length, n + (n >> 1));
+        long[] ts = new long[cap];
+        double[] cal = new double[cap];
+        int[] ids = new int[cap];
+        mergeInto(ts, cal, ids);
+        timestamps = ts;
+        calories = cal;
+        exerciseIds = ids;
+        runSize = n;
+        shared = false;
+        tailSize = 0;
+        if (tailShared) {
+            tailTimestamps = new long[0];
+            tailCalories = new double[0];
+            tailIds = new int[0];
+            tailPos = new int[0];
+            tailShared = false;
+        }
+    }
+
+    // Write all entries in timestamp order into the given arrays
+    private void mergeInto(long[] ts, double[] cal, int[] ids) {
+        int r = 0;
+        for (int j = 0; j < tailSize; j++) {
+            int p = tailPos[j];
+            // run entries that come before tail entry j
+            int k = p - j;
+            System.arraycopy(timestamps, r, ts, r + j, k - r);
+            System.arraycopy(calories, r, cal, r + j, k - r);
+            System.arraycopy(exerciseIds, r, ids, r + j, k - r);
+            r = k;
+            ts[p] = tailTimestamps[j];
+            cal[p] = tailCalories[j];
+            ids[p] = tailIds[j];
+        }
+        System.arraycopy(timestamps, r, ts, r + tailSize, runSize - r);
+        System.arraycopy(calories, r, cal, r + tailSize, runSize - r);
+        System.arraycopy(exerciseIds, r, ids, r + tailSize, runSize - r);
+    }
+
+    private void copyTail(int capacity) {
+        tailTimestamps = Arrays.copyOf(tailTimestamps, capacity);
+        tailCalories = Arrays.copyOf(tailCalories, capacity);
+        tailIds = Arrays.copyOf(tailIds, capacity);
+        tailPos = Arrays.copyOf(tailPos, capacity);
+        tailShared = false;
+    }
+
+    // Run index (>= 0) or ~tail index of the entry at position i in timestamp order
+    private int locate(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size());
+        if (tailSize == 0) return i;
+        int j = Arrays.binarySearch(tailPos, 0, tailSize, i);
+        return j >= 0 ? ~j : i - ~j;
+    }
+
+    // Number of tail entries positioned before i
+    private static int insertionPoint(int[] pos, int size, int i) {
+        int j = Arrays.binarySearch(pos, 0, size, i);
+        return j >= 0 ? j : ~j;
+    }
+
+    // First index in a[0, n) with a[index] >= key
+    private static int lowerBound(long[] a, int n, long key) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index in a[0, n) with a[index] > key
+    private static int upperBound(long[] a, int n, long key) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private void unshare() {
+        timestamps = timestamps.clone();
+        calories = calories.clone();
+        exerciseIds = exerciseIds.clone();
+        shared = false;
+    }
+
+    private void grow(int minCapacity) {
+        int cap = Math.max(minCapacity, timestamps.length + (timestamps.length >> 1));
+        timestamps = Arrays.copyOf(timestamps, cap);
+        calories = Arrays.copyOf(calories, cap);
+        exerciseIds = Arrays.copyOf(exerciseIds, cap);
+        shared = false;
+    }
+}
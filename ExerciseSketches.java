@@ -0,0 +1,160 @@
+package fitnesstracker;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Calories-per-entry quantiles for every exercise, and for all entries together, across a set of
+ * users (one user, or the whole population).
+ *
+ * Each exercise gets a QuantileSketch indexed by ExerciseCatalog id, so memory stays bounded by the
+ * number of exercises however long the histories get. Users are read once when they are added and
+ * after that the sketches are updated as entries come in. Sketches cannot forget values: when a
+ * watched user's history is cleared, or a user is removed, they are rebuilt on the next query by
+ * rescanning every watched user's full history. That costs O(all entries) across the set, so for a
+ * population expect the first query after a clear or remove to take as long as building it did.
+ * Values that did not come from a watched user (add() and merge()) are also kept in a separate set
+ * of sketches, which is merged back in after a rebuild, so they survive it.
+ *
+ * Call from the owner thread of the users; for a snapshot to use elsewhere, copy().
+ */
+public class ExerciseSketches implements UserChangeListener {
+    private final int k;
+    // slot i holds catalog id (i - 1); slot 0 is for entries without a name
+    private QuantileSketch[] sketches = new QuantileSketch[0];
+    private QuantileSketch all;
+    private final Set<User> users = Collections.newSetFromMap(new IdentityHashMap<>());
+    // values from add() and merge(); null until there are any
+    private ExerciseSketches extra;
+    private boolean stale;
+
+    public ExerciseSketches() {
+        this(QuantileSketch.DEFAULT_K);
+    }
+
+    public ExerciseSketches(int k) {
+        this.k = k;
+        all = new QuantileSketch(k);
+    }
+
+    // Add the user's history and keep following their new entries until removeUser()
+    public void addUser(User user) {
+        if (!users.add(user)) return;
+        user.addChangeListener(this);
+        if (!stale) addHistory(user);
+    }
+
+    // Stops following the user; their entries are dropped by a rebuild on the next query
+    public void removeUser(User user) {
+        if (!users.remove(user)) return;
+        user.removeChangeListener(this);
+        stale = true;
+    }
+
+    // Add one value that does not come from a watched user
+    public void add(int exerciseId, double kcal) {
+        extra().record(exerciseId, kcal);
+        if (!stale) record(exerciseId, kcal);
+    }
+
+    private void record(int exerciseId, double kcal) {
+        int s = exerciseId + 1;
+        if (s < 0) return;
+        if (s >= sketches.length) sketches = Arrays.copyOf(sketches, Math.max(s + 1, Math.max(8, sketches.length * 2)));
+        if (sketches[s] == null) sketches[s] = new QuantileSketch(k);
+        sketches[s].add(kcal);
+        all.add(kcal);
+    }
+
+    @Override
+    public void entryAdded(User user, ExerciseEntry entry) {
+        if (!stale) record(entry.getExerciseId(), entry.getCalories());
+    }
+
+    @Override
+    public void historyCleared(User user) {
+        stale = true;
+    }
+
+    // Calories per entry of one exercise (ExerciseCatalog.NO_EXERCISE for unnamed entries); empty if none.
+    // The sketch keeps being updated; copy() it to hold on to the current values
+    public QuantileSketch forExercise(int exerciseId) {
+        refresh();
+        int s = exerciseId + 1;
+        QuantileSketch q = s >= 0 && s < sketches.length ? sketches[s] : null;
+        return q != null ? q : new QuantileSketch(k);
+    }
+
+    public QuantileSketch forExercise(String name) {
+        return forExercise(ExerciseCatalog.idOf(name));
+    }
+
+    // Calories per entry over all exercises
+    public QuantileSketch all() {
+        refresh();
+        return all;
+    }
+
+    // Catalog ids with at least one entry, in id order
+    public int[] exerciseIds() {
+        refresh();
+        int n = 0;
+        for (QuantileSketch q : sketches) if (q != null) n++;
+        int[] ids = new int[n];
+        n = 0;
+        for (int s = 0; s < sketches.length; s++) if (sketches[s] != null) ids[n++] = s - 1;
+        return ids;
+    }
+
+    // Fold in the values of another set (e.g. one built per shard); the users stay with their own set
+    // and are not watched by this one
+    public void merge(ExerciseSketches other) {
+        other.refresh();
+        extra().fold(other);
+        if (!stale) fold(other);
+    }
+
+    private void fold(ExerciseSketches other) {
+        for (int s = 0; s < other.sketches.length; s++) {
+            QuantileSketch q = other.sketches[s];
+            if (q == null) continue;
+            if (s >= sketches.length) sketches = Arrays.copyOf(sketches, other.sketches.length);
+            if (sketches[s] == null) sketches[s] = new QuantileSketch(k);
+            sketches[s].merge(q);
+        }
+        all.merge(other.all);
+    }
+
+    // Detached copy of the current sketches (no users attached)
+    public ExerciseSketches copy() {
+        refresh();
+        ExerciseSketches c = new ExerciseSketches(k);
+        c.sketches = new QuantileSketch[sketches.length];
+        for (int s = 0; s < sketches.length; s++) {
+            if (sketches[s] != null) c.sketches[s] = sketches[s].copy();
+        }
+        c.all = all.copy();
+        return c;
+    }
+
+    private void addHistory(User user) {
+        for (ExerciseHistory.Cursor c = user.historyCursor(); c.next(); ) record(c.exerciseId(), c.calories());
+    }
+
+    private ExerciseSketches extra() {
+        if (extra == null) extra = new ExerciseSketches(k);
+        return extra;
+    }
+
+    // Rebuild from the histories after one was cleared
+    private void refresh() {
+        if (!stale) return;
+        stale = false;
+        sketches = new QuantileSketch[0];
+        all = new QuantileSketch(k);
+        for (User u : users) addHistory(u);
+        if (extra != null) fold(extra);
+    }
+}
@@ -0,0 +1,207 @@
+package fitnesstracker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running per-exercise aggregates for one user: total calories, entry count, min/max calories
+ * and the most recent timestamp per ExerciseCatalog id.
+ *
+ * Updated as entries are added, so per-exercise reports cost O(distinct exercises) instead of a
+ * pass over the whole history. Each exercise the user has done gets a slot in dense arrays,
+ * found through a small open-addressing id→slot table, so memory follows the user's own
+ * exercises rather than the size of the global catalog. Entries without an exercise name are
+ * tracked in a slot of their own. snapshot() is O(1) and copy-on-write.
+ */
+public class ExerciseStats {
+    // slot table: catalog id + 2 (0 = empty) -> slot + 1
+    private int[] keys = new int[0];
+    private int[] slotOf = new int[0];
+    // dense per-slot aggregates, in the order the exercises were first seen
+    private int[] ids = new int[0];
+    private double[] totals = new double[0];
+    private int[] counts = new int[0];
+    private double[] mins = new double[0];
+    private double[] maxs = new double[0];
+    private long[] lastPerformed = new long[0];
+    private int distinct;
+    // arrays are shared with a snapshot; copy them before writing
+    private boolean shared;
+
+    public void add(int exerciseId, double kcal, long timestamp) {
+        if (shared) unshare();
+        int s = slot(exerciseId);
+        if (s < 0) {
+            s = newSlot(exerciseId);
+            mins[s] = kcal;
+            maxs[s] = kcal;
+            lastPerformed[s] = timestamp;
+        } else {
+            if (kcal < mins[s]) mins[s] = kcal;
+            if (kcal > maxs[s]) maxs[s] = kcal;
+            if (timestamp > lastPerformed[s]) lastPerformed[s] = timestamp;
+        }
+        counts[s]++;
+        totals[s] += kcal;
+    }
+
+    public void clear() {
+        keys = new int[0];
+        slotOf = new int[0];
+        ids = new int[0];
+        totals = new double[0];
+        counts = new int[0];
+        mins = new double[0];
+        maxs = new double[0];
+        lastPerformed = new long[0];
+        distinct = 0;
+        shared = false;
+    }
+
+    // O(1) point-in-time copy (copy-on-write; the first write copies O(distinct exercises))
+    public ExerciseStats snapshot() {
+        ExerciseStats c = new ExerciseStats();
+        c.keys = keys;
+        c.slotOf = slotOf;
+        c.ids = ids;
+        c.totals = totals;
+        c.counts = counts;
+        c.mins = mins;
+        c.maxs = maxs;
+        c.lastPerformed = lastPerformed;
+        c.distinct = distinct;
+        c.shared = true;
+        shared = true;
+        return c;
+    }
+
+    private void unshare() {
+        keys = keys.clone();
+        slotOf = slotOf.clone();
+        ids = ids.clone();
+        totals = totals.clone();
+        counts = counts.clone();
+        mins = mins.clone();
+        maxs = maxs.clone();
+        lastPerformed = lastPerformed.clone();
+        shared = false;
+    }
+
+    public ExerciseStats copy() {
+        ExerciseStats c = new ExerciseStats();
+        c.keys = keys.clone();
+        c.slotOf = slotOf.clone();
+        c.ids = ids.clone();
+        c.totals = totals.clone();
+        c.counts = counts.clone();
+        c.mins = mins.clone();
+        c.maxs = maxs.clone();
+        c.lastPerformed = lastPerformed.clone();
+        c.distinct = distinct;
+        return c;
+    }
+
+    // Number of distinct exercises with at least one entry (including the unnamed slot)
+    public int distinctCount() { return distinct; }
+
+    public int getCount(int exerciseId) {
+        int s = slot(exerciseId);
+        return s >= 0 ? counts[s] : 0;
+    }
+
+    public double getTotalCalories(int exerciseId) {
+        int s = slot(exerciseId);
+        return s >= 0 ? totals[s] : 0.0;
+    }
+
+    // Min/max calories of a single entry; 0 if the exercise has no entries
+    public double getMinCalories(int exerciseId) {
+        int s = slot(exerciseId);
+        return s >= 0 ? mins[s] : 0.0;
+    }
+
+    public double getMaxCalories(int exerciseId) {
+        int s = slot(exerciseId);
+        return s >= 0 ? maxs[s] : 0.0;
+    }
+
+    // Timestamp of the latest entry, or -1 if the exercise has no entries
+    public long getLastPerformed(int exerciseId) {
+        int s = slot(exerciseId);
+        return s >= 0 ? lastPerformed[s] : -1L;
+    }
+
+    // Catalog ids with at least one entry (ExerciseCatalog.NO_EXERCISE for unnamed entries), in id order
+    public int[] exerciseIds() {
+        int[] out = Arrays.copyOf(ids, distinct);
+        Arrays.sort(out);
+        return out;
+    }
+
+    // Total calories per exercise name (unnamed entries under the null key)
+    public Map<String, Double> caloriesByName() {
+        Map<String, Double> map = new HashMap<>(distinct * 2);
+        for (int s = 0; s < distinct; s++) map.put(ExerciseCatalog.nameOf(ids[s]), totals[s]);
+        return map;
+    }
+
+    // Total calories indexed by catalog id (unnamed entries are not included)
+    public double[] caloriesById() {
+        double[] out = new double[ExerciseCatalog.size()];
+        for (int s = 0; s < distinct; s++) {
+            if (ids[s] >= 0 && ids[s] < out.length) out[ids[s]] = totals[s];
+        }
+        return out;
+    }
+
+    // Slot of the exercise, or -1 if it has no entries
+    private int slot(int exerciseId) {
+        if (keys.length == 0) return -1;
+        int key = exerciseId + 2;
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return slotOf[i] - 1;
+            if (keys[i] == 0) return -1;
+        }
+    }
+
+    private int newSlot(int exerciseId) {
+        if (distinct == ids.length) grow();
+        int s = distinct++;
+        ids[s] = exerciseId;
+        // keep the table at most half full
+        if (distinct * 2 > keys.length) rehash(Math.max(8, keys.length * 2));
+        else insert(exerciseId + 2, s);
+        return s;
+    }
+
+    private void insert(int key, int s) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != 0) i = (i + 1) & mask;
+        keys[i] = key;
+        slotOf[i] = s + 1;
+    }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        slotOf = new int[capacity];
+        for (int s = 0; s < distinct; s++) insert(ids[s] + 2, s);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        int len = Math.max(4, ids.length * 2);
+        ids = Arrays.copyOf(ids, len);
+        totals = Arrays.copyOf(totals, len);
+        counts = Arrays.copyOf(counts, len);
+        mins = Arrays.copyOf(mins, len);
+        maxs = Arrays.copyOf(maxs, len);
+        lastPerformed = Arrays.copyOf(lastPerformed, len);
+    }
+}
@@ -1,109 +1,290 @@
 package fitnesstracker;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class FitnessDataManager {
+    // On-disk layouts supported for user data. CSV is the original text layout and stays
+    // available for import/export; BINARY is the compact format implemented by BinaryDataFormat.
+    public enum Format { CSV, BINARY }
+
+    // Files smaller than this are not worth splitting across threads
+    private static final long PARALLEL_MIN_BYTES = 4L << 20;
+    private static final long PARALLEL_MIN_CHUNK = 1L << 20;
+
+    // Save users in the requested format
+    public static void saveUsers(List<User> users, File file, Format format) throws IOException {
+        if (format == Format.BINARY) BinaryDataFormat.saveUsers(users, file);
+        else saveUsers(users, file);
+    }
+
+    public static void saveUsers(List<User> users, OutputStream os, Format format) throws IOException {
+        if (format == Format.BINARY) BinaryDataFormat.saveUsers(users, os);
+        else saveUsers(users, os);
+    }
+
+    /**
+     * Save users to a temp file in the same directory, fsync it and rename it over the target,
+     * so readers never observe a half-written file. Returns the CRC32 of the bytes written.
+     */
+    public static long saveUsersAtomic(List<User> users, File file, Format format) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        CRC32 crc = new CRC32();
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                CheckedOutputStream cos = new CheckedOutputStream(fos, crc);
+                saveUsers(users, cos, format);
+                cos.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+        return crc.getValue();
+    }
+
+    // Load users in the requested format
+    public static List<User> loadUsers(File file, Format format) throws IOException {
+        if (format == Format.BINARY) return BinaryDataFormat.loadUsers(file);
+        return loadCsvUsers(file);
+    }
+
+    // Detect the format of an existing file from its header; missing files count as CSV
+    public static Format detectFormat(File file) throws IOException {
+        return BinaryDataFormat.isBinaryFile(file) ? Format.BINARY : Format.CSV;
+    }
+
+    // One-shot conversion between formats, e.g. fitness_users.csv -> fitness_users.dat
+    public static void convert(File source, File target, Format targetFormat) throws IOException {
+        List<User> users = loadUsers(source);
+        saveUsers(users, target, targetFormat);
+    }
+
     // Save users to CSV: name,age,weightKg,heightCm,sex,history
     // history is serialized as entries separated by ';' where each entry is name|calories|timestamp
     public static void saveUsers(List<User> users, File file) throws IOException {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
-            // header: name,age,weightKg,heightCm,sex,history,dailyCalorieGoal,weightGoalKg,avatarPath,dailyWaterGoalMl,waterRecords
-            pw.println("name,age,weightKg,heightCm,sex,history,dailyCalorieGoal,weightGoalKg,avatarPath,dailyWaterGoalMl,waterRecords");
-            for (User u : users) {
-                String hist = serializeHistory(u);
-                StringBuilder waterRecordsStr = new StringBuilder();
-                for (WaterRecord wr : u.getWaterRecords()) {
-                    waterRecordsStr.append(wr.getTimestamp().toLocalDate()).append("|").append(wr.getAmount()).append(";");
-                }
-                pw.printf("%s,%d,%.2f,%.2f,%s,%s,%d,%.2f,%s,%d,%s%n",
-                        escapeField(u.getName()), u.getAge(), u.getWeightKg(), u.getHeightCm(),
-                        escapeField(u.getSex()), escapeField(hist), u.getDailyCalorieGoal(), u.getWeightGoalKg(), escapeField(u.getAvatarPath()),
-                        u.getDailyWaterGoalMl(), waterRecordsStr.toString());
+        try (OutputStream os = new FileOutputStream(file)) {
+            saveUsers(users, os);
+        }
+    }
+
+    public static void saveUsers(List<User> users, OutputStream os) throws IOException {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(os)));
+        // header: name,age,weightKg,heightCm,sex,history,dailyCalorieGoal,weightGoalKg,avatarPath,dailyWaterGoalMl,waterRecords
+        pw.println("name,age,weightKg,heightCm,sex,history,dailyCalorieGoal,weightGoalKg,avatarPath,dailyWaterGoalMl,waterRecords");
+        for (User u : users) {
+            String hist = serializeHistory(u);
+            StringBuilder waterRecordsStr = new StringBuilder();
+            for (WaterRecord wr : u.getWaterRecords()) {
+                waterRecordsStr.append(wr.getTimestamp().toLocalDate()).append("|").append(wr.getAmount()).append(";");
             }
+            pw.printf("%s,%d,%.2f,%.2f,%s,%s,%d,%.2f,%s,%d,%s%n",
+                    escapeField(u.getName()), u.getAge(), u.getWeightKg(), u.getHeightCm(),
+                    escapeField(u.getSex()), escapeField(hist), u.getDailyCalorieGoal(), u.getWeightGoalKg(), escapeField(u.getAvatarPath()),
+                    u.getDailyWaterGoalMl(), waterRecordsStr.toString());
         }
+        pw.flush();
+        if (pw.checkError()) throw new IOException("Failed to write user data");
     }
 
-    // Load users from CSV
+    // Load users from either format (detected from the file header)
     public static List<User> loadUsers(File file) throws IOException {
-        List<User> users = new ArrayList<>();
-        if (!file.exists()) return users;
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            br.readLine(); // skip
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = splitCsv(line);
-                if (parts.length >= 5) {
-                    String name = unescape(parts[0]);
-                    int age = parseIntSafe(parts[1]);
-                    double weight = parseDoubleSafe(parts[2]);
-                    double height = parseDoubleSafe(parts[3]);
-                    String sex = unescape(parts[4]);
-                    User user = new User(name, age, weight, height, sex);
-                    // history may be in parts[5]
-                    if (parts.length >= 6) {
-                        String histRaw = unescapeField(parts[5]);
-                        try { parseHistoryIntoUser(histRaw, user); } catch (Exception ex) { /* ignore malformed history */ }
-                        // recompute derived daily totals from loaded history
-                        try { user.recomputeDailyTotals(); } catch (Exception e) { /* ignore */ }
-                    }
-                    // optional fields: dailyCalorieGoal (6), weightGoalKg (7), avatarPath (8), dailyWaterGoalMl (9), waterRecords (10)
-                    if (parts.length >= 7) {
-                        int goal = parseIntSafe(unescapeField(parts[6]));
-                        user.setDailyCalorieGoal(goal);
-                    }
-                    if (parts.length >= 8) {
-                        double wgoal = parseDoubleSafe(unescapeField(parts[7]));
-                        user.setWeightGoalKg(wgoal);
-                    }
-                    if (parts.length >= 9) {
-                        String avatar = unescapeField(parts[8]);
-                        user.setAvatarPath(avatar);
-                    }
-                    if (parts.length >= 10) {
-                        int waterGoal = parseIntSafe(unescapeField(parts[9]));
-                        user.setDailyWaterGoalMl(waterGoal);
-                    }
-                    if (parts.length >= 11) {
-                        List<WaterRecord> waterRecords = new ArrayList<>();
-                        String[] records = parts[10].split(";");
-                        for (String rec : records) {
-                            if (rec.trim().isEmpty()) continue;
-                            String[] wparts = rec.split("\\|");
-                            if (wparts.length == 2) {
-                                try {
-                                    java.time.LocalDate date = java.time.LocalDate.parse(wparts[0]);
-                                    int amount = Integer.parseInt(wparts[1]);
-                                    waterRecords.add(new WaterRecord(amount, date.atStartOfDay()));
-                                } catch (Exception e) { /* skip invalid */ }
-                            }
-                        }
-                        user.setWaterRecords(waterRecords);
-                    }
-                    users.add(user);
-                }
+        return loadUsers(file, detectFormat(file));
+    }
+
+    /**
+     * Load users using up to 'parallelism' threads. The CSV is split into line-aligned byte ranges
+     * that are parsed on a ForkJoinPool and concatenated in file order, so the result is the same
+     * as loadUsers(file). Small files, binary files and charsets where a '\n' byte may not be a
+     * line break are loaded sequentially.
+     */
+    public static List<User> loadUsersParallel(File file, int parallelism) throws IOException {
+        if (detectFormat(file) == Format.BINARY) return BinaryDataFormat.loadUsers(file);
+        Charset cs = Charset.defaultCharset();
+        if (parallelism <= 1 || !file.exists() || file.length() < PARALLEL_MIN_BYTES || !isLineSplittable(cs)) {
+            return loadCsvUsers(file);
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            int chunks = (int) Math.max(1, Math.min(parallelism * 4L, size / PARALLEL_MIN_CHUNK));
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            for (int k = 1; k < chunks; k++) {
+                long b = nextLineStart(ch, size * k / chunks);
+                if (b > bounds.get(bounds.size() - 1) && b < size) bounds.add(b);
+            }
+            bounds.add(size);
+
+            List<Callable<List<User>>> tasks = new ArrayList<>();
+            for (int k = 0; k + 1 < bounds.size(); k++) {
+                long from = bounds.get(k), to = bounds.get(k + 1);
+                boolean first = k == 0;
+                tasks.add(() -> {
+                    Reader r = new InputStreamReader(new RangeInputStream(ch, from, to), cs);
+                    return new CsvUserReader(r, first).readAll();
+                });
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<User> users = new ArrayList<>();
+                for (Future<List<User>> f : pool.invokeAll(tasks)) users.addAll(f.get());
+                return users;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading users");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException(cause);
+            } finally {
+                pool.shutdown();
             }
         }
-        return users;
     }
 
-    private static int parseIntSafe(String s) {
-        try { return Integer.parseInt(s.trim()); } catch (Exception e) { return 0; }
+    // Only charsets where a 0x0A byte is always a '\n' char can be split at arbitrary lines
+    private static boolean isLineSplittable(Charset cs) {
+        return cs.equals(StandardCharsets.UTF_8) || cs.equals(StandardCharsets.US_ASCII) || cs.equals(StandardCharsets.ISO_8859_1);
     }
 
-    private static double parseDoubleSafe(String s) {
-        try { return Double.parseDouble(s.trim()); } catch (Exception e) { return 0.0; }
+    // Offset just after the first '\n' at or after 'from' (or the file size if there is none)
+    private static long nextLineStart(FileChannel ch, long from) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(8192);
+        long pos = from;
+        while (true) {
+            bb.clear();
+            int n = ch.read(bb, pos);
+            if (n <= 0) return ch.size();
+            for (int i = 0; i < n; i++) {
+                if (bb.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
     }
 
-    private static String escape(String s) {
-        if (s == null) return "";
-        return s.replace("\n", " ").replace(",", "\\,");
+    // Reads the byte range [from, to) of a channel using positional reads, so ranges can be read concurrently
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private long pos;
+        private final long end;
+
+        RangeInputStream(FileChannel ch, long from, long to) {
+            this.ch = ch;
+            this.pos = from;
+            this.end = to;
+            buf.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buf.hasRemaining() && !refill()) return -1;
+            return buf.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining() && !refill()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        private boolean refill() throws IOException {
+            if (pos >= end) return false;
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - pos));
+            int n = ch.read(buf, pos);
+            if (n <= 0) return false;
+            pos += n;
+            buf.flip();
+            return true;
+        }
+    }
+
+    /** Receives users from streamUsers() as soon as they are parsed. */
+    public interface UserSink {
+        // bytesRead is approximate (the reader buffers ahead); return false to stop loading
+        boolean accept(User user, long bytesRead, long totalBytes) throws IOException;
+    }
+
+    /**
+     * Load users one at a time in file order, handing each to the sink as soon as it is parsed,
+     * so callers can show the first users long before a large file is fully read.
+     * Returns false if the sink stopped the load early.
+     */
+    public static boolean streamUsers(File file, UserSink sink) throws IOException {
+        if (!file.exists()) return true;
+        long total = file.length();
+        Format format = detectFormat(file);
+        try (CountingInputStream in = new CountingInputStream(new FileInputStream(file))) {
+            if (format == Format.BINARY) {
+                IOException[] failure = new IOException[1];
+                boolean completed = BinaryDataFormat.streamUsers(in, u -> {
+                    try { return sink.accept(u, in.count, total); }
+                    catch (IOException ex) { failure[0] = ex; return false; }
+                });
+                if (failure[0] != null) throw failure[0];
+                return completed;
+            }
+            CsvUserReader reader = new CsvUserReader(new InputStreamReader(in));
+            User u;
+            while ((u = reader.next()) != null) {
+                if (!sink.accept(u, in.count, total)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    // Load users from CSV
+    private static List<User> loadCsvUsers(File file) throws IOException {
+        if (!file.exists()) return new ArrayList<>();
+        try (CsvUserReader reader = new CsvUserReader(new FileReader(file))) {
+            return reader.readAll();
+        }
     }
 
-    private static String unescape(String s) {
+    private static String escape(String s) {
         if (s == null) return "";
-        return s.replace("\\,", ",");
+        return s.replace("\n", " ").replace(",", "\\,");
     }
 
     // Escape a whole field (also escapes backslash and separators used in history)
@@ -118,89 +299,17 @@ public class FitnessDataManager {
         return out;
     }
 
-    private static String unescapeField(String s) {
-        if (s == null) return "";
-        StringBuilder sb = new StringBuilder();
-        boolean esc = false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (esc) { sb.append(c); esc = false; }
-            else if (c == '\\') esc = true;
-            else sb.append(c);
-        }
-        return sb.toString();
-    }
-
     // Serialize a user's history into a compact string
     private static String serializeHistory(User u) {
         StringBuilder sb = new StringBuilder();
-        for (ExerciseEntry e : u.getHistory()) {
+        for (ExerciseHistory.Cursor c = u.historyCursor(); c.next(); ) {
             if (sb.length() > 0) sb.append(';');
-            String name = e.getExerciseName();
-            String calories = String.format("%.2f", e.getCalories());
-            String ts = Long.toString(e.getTimestamp());
+            String name = c.exerciseName();
+            String calories = String.format("%.2f", c.calories());
+            String ts = Long.toString(c.timestamp());
             String entry = escapeField(name) + "|" + escapeField(calories) + "|" + escapeField(ts);
             sb.append(entry);
         }
         return sb.toString();
     }
-
-    private static void parseHistoryIntoUser(String histRaw, User user) {
-        if (histRaw == null || histRaw.isEmpty()) return;
-        StringBuilder cur = new StringBuilder();
-        boolean esc = false;
-        java.util.List<String> entries = new java.util.ArrayList<>();
-        for (int i = 0; i < histRaw.length(); i++) {
-            char c = histRaw.charAt(i);
-            if (esc) { cur.append(c); esc = false; }
-            else if (c == '\\') esc = true;
-            else if (c == ';') { entries.add(cur.toString()); cur.setLength(0); }
-            else cur.append(c);
-        }
-        if (cur.length() > 0) entries.add(cur.toString());
-        for (String ent : entries) {
-            // split by unescaped '|'
-            StringBuilder part = new StringBuilder();
-            java.util.List<String> parts = new java.util.ArrayList<>();
-            esc = false;
-            for (int i = 0; i < ent.length(); i++) {
-                char c = ent.charAt(i);
-                if (esc) { part.append(c); esc = false; }
-                else if (c == '\\') esc = true;
-                else if (c == '|') { parts.add(part.toString()); part.setLength(0); }
-                else part.append(c);
-            }
-            if (part.length() > 0) parts.add(part.toString());
-            if (parts.size() >= 3) {
-                String name = unescapeField(parts.get(0));
-                double cal = parseDoubleSafe(unescapeField(parts.get(1)));
-                long ts = 0;
-                try { ts = Long.parseLong(unescapeField(parts.get(2))); } catch (Exception ex) { ts = System.currentTimeMillis(); }
-                user.addExerciseEntry(new ExerciseEntry(name, cal, ts));
-            }
-        }
-    }
-
-    private static String[] splitCsv(String line) {
-        // simple split that handles escaped commas \,
-        List<String> parts = new ArrayList<>();
-        StringBuilder cur = new StringBuilder();
-        boolean escape = false;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (escape) {
-                cur.append(c);
-                escape = false;
-            } else if (c == '\\') {
-                escape = true;
-            } else if (c == ',') {
-                parts.add(cur.toString());
-                cur.setLength(0);
-            } else {
-                cur.append(c);
-            }
-        }
-        parts.add(cur.toString());
-        return parts.toArray(new String[0]);
-    }
 }
@@ -6,11 +6,9 @@ import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
-import javax.swing.table.DefaultTableModel;
 import java.time.LocalDate;
-import java.text.SimpleDateFormat;
 
 public class GUI extends JFrame {
         // Water Intake Tracker UI fields
@@ -66,7 +64,6 @@ public class GUI extends JFrame {
                 int val = Integer.parseInt(txt);
                 if (val < 0) throw new NumberFormatException();
                 u.setDailyWaterGoalMl(val);
-                updateWaterPanel();
                 JOptionPane.showMessageDialog(this, "Water goal updated for " + u.getName());
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid non-negative number for water goal.");
@@ -77,7 +74,6 @@ public class GUI extends JFrame {
             User u = userJList.getSelectedValue();
             if (u == null) { JOptionPane.showMessageDialog(this, "Select a user first."); return; }
             u.addWater(amount);
-            updateWaterPanel();
         }
 
         private void onAddCustomWater() {
@@ -89,7 +85,6 @@ public class GUI extends JFrame {
                 if (val <= 0) throw new NumberFormatException();
                 u.addWater(val);
                 customWaterField.setText("");
-                updateWaterPanel();
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid positive number for water amount.");
             }
@@ -98,7 +93,9 @@ public class GUI extends JFrame {
         private void showWaterReminder() {
             JOptionPane.showMessageDialog(this, "\uD83D\uDCA7 Time to drink water! Stay hydrated!", "Water Reminder", JOptionPane.INFORMATION_MESSAGE);
         }
-    private DefaultListModel<User> userListModel = new DefaultListModel<>();
+    // All users, indexed by name; the list model below is a view of it
+    private final UserRepository users = new UserRepository();
+    private final UserListModel userListModel = new UserListModel(users);
     private JList<User> userJList = new JList<>(userListModel);
 
     private JTextField nameField = new JTextField(12);
@@ -121,11 +118,21 @@ public class GUI extends JFrame {
     private JLabel mildLabel = new JLabel();
     private JLabel moderateLabel = new JLabel();
 
+    // Changes of the selected user, batched per EDT tick; the details panels update from these
+    private final UserEventBus events = new UserEventBus();
+    private User watchedUser;
+
     // Exercise history table
-    private DefaultTableModel historyTableModel;
+    private HistoryTableModel historyTableModel;
     private JTable historyTable;
 
     private File dataFile = new File(System.getProperty("user.home"), "fitness_users.csv");
+    // Journals every user change and rewrites the data file in the background
+    private PersistenceService persistence;
+    // Background load in progress, if any
+    private SwingWorker<Boolean, User> loadWorker;
+    private JProgressBar loadProgress = new JProgressBar(0, 100);
+    private JButton cancelLoadBtn;
 
     public GUI() {
         super("Fitness Tracker");
@@ -138,7 +145,7 @@ public class GUI extends JFrame {
         // Soft background
         getContentPane().setBackground(new Color(0xF3FBF8));
 
-        List<Exercise> exercises = defaultExercises();
+        List<Exercise> exercises = ExerciseCatalog.defaultExercises();
         exerciseBox = new JComboBox<>(exercises.toArray(new Exercise[0]));
         exerciseBox.setBackground(Color.WHITE);
 
@@ -162,7 +169,12 @@ public class GUI extends JFrame {
         JButton removeBtn = styledButton("Remove User");
         removeBtn.addActionListener(e -> {
             User sel = userJList.getSelectedValue();
-            if (sel != null) userListModel.removeElement(sel);
+            if (sel != null) {
+                int pos = users.remove(sel);
+                if (pos >= 0) userListModel.removed(pos);
+                if (historyTableModel.getUser() == sel) clearHistoryTable();
+                persistence.userRemoved(sel);
+            }
         });
         leftButtons.add(removeBtn);
         left.add(leftButtons, BorderLayout.SOUTH);
@@ -282,7 +294,13 @@ public class GUI extends JFrame {
         saveBtn.addActionListener(e -> onSave());
         JButton loadBtn = styledButton("Load Users");
         loadBtn.addActionListener(e -> onLoad());
+        cancelLoadBtn = styledButton("Cancel Load");
+        cancelLoadBtn.addActionListener(e -> { if (loadWorker != null) loadWorker.cancel(false); });
+        loadProgress.setStringPainted(true);
+        loadProgress.setVisible(false);
+        cancelLoadBtn.setVisible(false);
         filePanel.add(saveBtn); filePanel.add(loadBtn);
+        filePanel.add(loadProgress); filePanel.add(cancelLoadBtn);
         right.add(filePanel);
 
         // Exercise history section
@@ -318,29 +336,53 @@ public class GUI extends JFrame {
         add(split);
 
         userJList.addListSelectionListener(e -> onUserSelected());
+        events.subscribe(this::onUserEvents);
+
+        FitnessDataManager.Format format = FitnessDataManager.Format.CSV;
+        try { format = FitnessDataManager.detectFormat(dataFile); } catch (Exception ex) { /* keep CSV */ }
+        persistence = new PersistenceService(new ChangeJournal(dataFile, format), users::asList, SwingUtilities::invokeLater);
+        persistence.setFailureHandler(new ChangeJournal.FailureHandler() {
+            @Override public void failed(IOException cause) {
+                setTitle("Fitness Tracker - changes not saved");
+                JOptionPane.showMessageDialog(GUI.this, "Changes can no longer be saved: " + cause.getMessage()
+                        + "\nFix the cause (e.g. free disk space) and use Save to write everything again.",
+                        "Save failed", JOptionPane.ERROR_MESSAGE);
+            }
+
+            @Override public void recovered() {
+                setTitle("Fitness Tracker");
+            }
+        });
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override public void windowClosing(java.awt.event.WindowEvent e) {
+                // last chance to write everything if changes were lost and the cause has gone away
+                if (persistence.getFailure() != null) {
+                    try { persistence.flushNow().get(); } catch (Exception ex) { /* reported by close() */ }
+                }
+                try {
+                    persistence.close();
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(GUI.this, "Some changes could not be saved: " + ex.getMessage(),
+                            "Save failed", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
 
         // try loading automatically
-        try { loadUsersFromFile(); } catch (Exception ex) { /* ignore */ }
+        loadUsersFromFile(false);
 
         setVisible(true);
     }
 
     private void initHistoryTable() {
-        historyTableModel = new DefaultTableModel(new Object[]{"Exercise","Calories","Timestamp"}, 0) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+        historyTableModel = new HistoryTableModel();
         historyTable = new JTable(historyTableModel);
         historyTable.setFillsViewportHeight(true);
         historyTable.setRowHeight(26);
     }
 
-    private void addHistoryRow(ExerciseEntry ee) {
-        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-        historyTableModel.addRow(new Object[]{ee.getExerciseName(), String.format("%.1f kcal", ee.getCalories()), df.format(new java.util.Date(ee.getTimestamp()))});
-    }
-
     private void clearHistoryTable() {
-        historyTableModel.setRowCount(0);
+        historyTableModel.setUser(null);
     }
 
     private void onAddUser(ActionEvent e) {
@@ -354,35 +396,52 @@ public class GUI extends JFrame {
             return;
         }
         // If user exists, update
-        for (int i = 0; i < userListModel.size(); i++) {
-            User u = userListModel.get(i);
-            if (u.getName().equalsIgnoreCase(name)) {
-                u.setAge(age); u.setWeightKg(weight); u.setHeightCm(height); u.setSex(sex);
-                userJList.repaint();
-                return;
-            }
+        User existing = users.findByName(name);
+        if (existing != null) {
+            existing.setProfile(age, weight, height, sex);
+            userJList.repaint();
+            return;
         }
-        userListModel.addElement(new User(name, age, weight, height, sex));
+        User u = new User(name, age, weight, height, sex);
+        users.add(u);
+        userListModel.added(users.size() - 1, users.size() - 1);
+        persistence.userAdded(u);
     }
 
     private void onUserSelected() {
         User u = userJList.getSelectedValue();
+        if (u != watchedUser) {
+            if (watchedUser != null) events.unwatch(watchedUser);
+            if (u != null) events.watch(u);
+            watchedUser = u;
+        }
         if (u == null) return;
         nameField.setText(u.getName());
         ageField.setText(String.valueOf(u.getAge()));
         weightField.setText(String.valueOf(u.getWeightKg()));
         heightField.setText(String.valueOf(u.getHeightCm()));
         sexBox.setSelectedItem(u.getSex());
-        bmiLabel.setText(String.format("BMI: %.2f", u.calculateBMI()));
-        // populate history table
-        if (historyTableModel != null) {
-            historyTableModel.setRowCount(0);
-            SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-            for (ExerciseEntry ee : u.getHistory()) {
-                historyTableModel.addRow(new Object[]{ee.getExerciseName(), String.format("%.1f kcal", ee.getCalories()), df.format(new java.util.Date(ee.getTimestamp()))});
-            }
-        }
+        // the table reads the user's history directly and follows new entries
+        if (historyTableModel != null) historyTableModel.setUser(u);
         updateGoalPanel();
+        updateWaterPanel();
+    }
+
+    // Update only the parts of the details panel affected by the selected user's changes
+    private void onUserEvents(List<UserEvent> batch) {
+        User u = userJList.getSelectedValue();
+        if (u == null) return;
+        boolean calories = false, water = false, profile = false;
+        for (UserEvent e : batch) {
+            if (e.getUser() != u) continue;
+            if (e instanceof UserEvent.EntryAdded || e instanceof UserEvent.HistoryCleared) calories = true;
+            else if (e instanceof UserEvent.WaterAdded) water = true;
+            else if (e instanceof UserEvent.GoalChanged) { calories = true; water = true; }
+            else if (e instanceof UserEvent.ProfileChanged) profile = true;
+        }
+        if (calories) updateCalorieProgress(u);
+        if (water) updateWaterPanel();
+        if (profile) updateProfileFigures(u);
     }
 
     // Update Calorie Goal Tracker panel
@@ -396,6 +455,12 @@ public class GUI extends JFrame {
             moderateLabel.setText("-");
             return;
         }
+        updateCalorieProgress(u);
+        updateProfileFigures(u);
+    }
+
+    // Burned today and remaining to the daily goal (depends on the history and the goal)
+    private void updateCalorieProgress(User u) {
         int burned = GoalManager.getCaloriesBurnedToday(u);
         int goal = u.getDailyCalorieGoal();
         int remaining = GoalManager.getRemainingToGoal(u);
@@ -412,6 +477,11 @@ public class GUI extends JFrame {
             remainingLabel.setText("-");
             remainingLabel.setForeground(new Color(0x1F3D3D));
         }
+    }
+
+    // BMI and intake recommendations (depend only on the profile)
+    private void updateProfileFigures(User u) {
+        bmiLabel.setText(String.format("BMI: %.2f", u.calculateBMI()));
         int maintenance = GoalManager.getMaintenanceCalories(u);
         maintenanceLabel.setText(String.valueOf(maintenance));
         mildLabel.setText(String.valueOf(GoalManager.getRecommendedIntake(u, 300)));
@@ -426,7 +496,6 @@ public class GUI extends JFrame {
             int val = Integer.parseInt(txt);
             if (val < 0) throw new NumberFormatException();
             u.setDailyCalorieGoal(val);
-            updateGoalPanel();
             JOptionPane.showMessageDialog(this, "Goal updated for " + u.getName());
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this, "Please enter a valid non-negative number for daily goal.");
@@ -464,20 +533,30 @@ public class GUI extends JFrame {
         calLabel.setText(String.format("Calories (%.0f min): %.1f kcal", minutes, kcal));
     }
 
+    // Writes the data file in the background; the EDT only takes snapshots of changed users
     private void onSave() {
-        try {
-            List<User> users = new ArrayList<>();
-            for (int i = 0; i < userListModel.size(); i++) users.add(userListModel.get(i));
-            FitnessDataManager.saveUsers(users, dataFile);
-            JOptionPane.showMessageDialog(this, "Saved to: " + dataFile.getAbsolutePath());
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Save failed: " + ex.getMessage());
-        }
+        java.util.concurrent.Future<?> written = persistence.flushNow();
+        new SwingWorker<Void, Void>() {
+            @Override protected Void doInBackground() throws Exception {
+                written.get();
+                return null;
+            }
+
+            @Override protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(GUI.this, "Saved to: " + dataFile.getAbsolutePath());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause.getCause() != null) cause = cause.getCause();
+                    JOptionPane.showMessageDialog(GUI.this, "Save failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
 
     private void onLoad() {
-        try { loadUsersFromFile(); }
-        catch (Exception ex) { JOptionPane.showMessageDialog(this, "Load failed: " + ex.getMessage()); }
+        loadUsersFromFile(true);
     }
 
     private void onAddExerciseToHistory() {
@@ -487,10 +566,8 @@ public class GUI extends JFrame {
         if (ex == null) { JOptionPane.showMessageDialog(this, "Select an exercise."); return; }
         double kcal = estimateCaloriesPerHour(ex.getMet(), u.getWeightKg());
         ExerciseEntry entry = new ExerciseEntry(ex.getName(), kcal, System.currentTimeMillis());
+        // the history table and the goal panel pick the entry up through their listeners
         u.addExerciseEntry(entry);
-        // update UI table
-        addHistoryRow(entry);
-        updateGoalPanel();
     }
 
     private void onClearHistory() {
@@ -499,15 +576,13 @@ public class GUI extends JFrame {
         int ok = JOptionPane.showConfirmDialog(this, "Clear exercise history for " + u.getName() + "?", "Confirm", JOptionPane.YES_NO_OPTION);
         if (ok == JOptionPane.YES_OPTION) {
             u.clearHistory();
-            clearHistoryTable();
         }
     }
 
     private void onShowChart() {
         User u = userJList.getSelectedValue();
         if (u == null) { JOptionPane.showMessageDialog(this, "Select a user first."); return; }
-        java.util.Map<String, Double> data = u.aggregateCaloriesPerExercise();
-        ChartWindow cw = new ChartWindow(u.getName(), data);
+        ChartWindow cw = new ChartWindow(u);
         cw.setVisible(true);
     }
 
@@ -528,10 +603,67 @@ public class GUI extends JFrame {
         }
     }
 
-    private void loadUsersFromFile() throws Exception {
-        List<User> users = FitnessDataManager.loadUsers(dataFile);
-        userListModel.clear();
-        for (User u : users) userListModel.addElement(u);
+    // Streams users into the list as they are read so the window stays usable on large files.
+    // Saving stays disabled until the load completes (see PersistenceService).
+    private void loadUsersFromFile(boolean reportErrors) {
+        if (loadWorker != null && !loadWorker.isDone()) return;
+        int oldSize = users.size();
+        users.clear();
+        userListModel.removed(0, oldSize - 1);
+        clearHistoryTable();
+        loadProgress.setValue(0);
+        loadProgress.setVisible(true);
+        cancelLoadBtn.setVisible(true);
+        loadWorker = new SwingWorker<Boolean, User>() {
+            @Override protected Boolean doInBackground() throws Exception {
+                return persistence.load((u, read, total) -> {
+                    if (isCancelled()) return false;
+                    publish(u);
+                    if (total > 0) setProgress((int) Math.min(100, read * 100 / total));
+                    return true;
+                });
+            }
+
+            @Override protected void process(List<User> batch) {
+                if (isCancelled()) return;
+                int from = users.size();
+                users.addAll(batch);
+                userListModel.added(from, users.size() - 1);
+            }
+
+            @Override protected void done() {
+                loadProgress.setVisible(false);
+                cancelLoadBtn.setVisible(false);
+                if (isCancelled()) {
+                    JOptionPane.showMessageDialog(GUI.this, "Load cancelled. Saving is disabled until the users are loaded again.");
+                    return;
+                }
+                try {
+                    get();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (reportErrors) JOptionPane.showMessageDialog(GUI.this, "Load failed: " + cause.getMessage());
+                }
+            }
+        };
+        loadWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) loadProgress.setValue((Integer) e.getNewValue());
+        });
+        loadWorker.execute();
+    }
+
+    // JList model backed by the repository; callers report changes after updating the repository
+    private static class UserListModel extends AbstractListModel<User> {
+        private final UserRepository users;
+
+        UserListModel(UserRepository users) { this.users = users; }
+
+        @Override public int getSize() { return users.size(); }
+        @Override public User getElementAt(int index) { return users.get(index); }
+
+        void added(int from, int to) { if (to >= from) fireIntervalAdded(this, from, to); }
+        void removed(int from, int to) { if (to >= from) fireIntervalRemoved(this, from, to); }
+        void removed(int index) { removed(index, index); }
     }
 
     // MET-based calculation using standard formula: kcal/min = (MET * 3.5 * weightKg) / 200
@@ -543,18 +675,6 @@ public class GUI extends JFrame {
     private int parseInt(String s) { try { return Integer.parseInt(s.trim()); } catch (Exception e) { return 0; } }
     private double parseDouble(String s) { try { return Double.parseDouble(s.trim()); } catch (Exception e) { return 0.0; } }
 
-    private List<Exercise> defaultExercises() {
-        List<Exercise> list = new ArrayList<>();
-        list.add(new Exercise("Walking (3.0 mph)", 3.3));
-        list.add(new Exercise("Jogging (6 mph)", 10.0));
-        list.add(new Exercise("Running (8 mph)", 11.8));
-        list.add(new Exercise("Cycling (moderate)", 8.0));
-        list.add(new Exercise("Swimming (moderate)", 6.0));
-        list.add(new Exercise("Yoga (Hatha)", 2.5));
-        list.add(new Exercise("Strength training (moderate)", 6.0));
-        return list;
-    }
-
     // Helper to create a styled rounded button
     private JButton styledButton(String text) {
         JButton b = new RoundedButton(text);
@@ -1,29 +1,84 @@
 package fitnesstracker;
 
-import java.time.LocalDate;
+import java.util.Collection;
 
 /**
  * GoalManager handles calorie goal logic and recommendations for a user.
+ *
+ * The derived values are computed together into a DerivedMetrics cached on the user and reused
+ * until the user's profile/goals or history change, or the day rolls over. Like the user itself,
+ * call from the user's owner thread.
  */
 public class GoalManager {
     // Get total calories burned today for a user
     public static int getCaloriesBurnedToday(User user) {
         if (user == null) return 0;
-        LocalDate today = LocalDate.now();
-        return (int)Math.round(user.getCaloriesForDate(today));
+        return metrics(user).getCaloriesBurnedToday();
     }
 
     // Get remaining calories to reach daily goal
     public static int getRemainingToGoal(User user) {
         if (user == null) return 0;
-        int burned = getCaloriesBurnedToday(user);
-        int goal = (int)Math.round(user.getDailyCalorieGoal());
-        return goal - burned;
+        return metrics(user).getRemainingToGoal();
     }
 
     // Calculate BMR using Mifflin–St Jeor equation
     public static int getBMR(User user) {
         if (user == null) return 0;
+        return metrics(user).getBmr();
+    }
+
+    // Maintenance calories (light activity)
+    public static int getMaintenanceCalories(User user) {
+        if (user == null) return 0;
+        return metrics(user).getMaintenanceCalories();
+    }
+
+    // Recommended intake for deficit
+    public static int getRecommendedIntake(User user, int deficit) {
+        return getMaintenanceCalories(user) - deficit;
+    }
+
+    // All derived values for the user, from the cache when nothing they depend on has changed
+    public static DerivedMetrics metrics(User user) {
+        return metrics(user, today());
+    }
+
+    // Metrics for many users (e.g. a report); "today" is read once for the whole batch
+    public static DerivedMetrics[] metrics(Collection<User> users) {
+        long today = today();
+        DerivedMetrics[] out = new DerivedMetrics[users.size()];
+        int i = 0;
+        for (User u : users) out[i++] = u == null ? null : metrics(u, today);
+        return out;
+    }
+
+    static DerivedMetrics metrics(User user, long today) {
+        DerivedMetrics m = user.getMetricsCache();
+        if (m != null && m.isCurrent(user, today)) return m;
+
+        double bmi;
+        int bmr, maintenance;
+        if (m != null && m.profileVersion() == user.getProfileVersion()) {
+            // only the history or the day changed
+            bmi = m.getBmi();
+            bmr = m.getBmr();
+            maintenance = m.getMaintenanceCalories();
+        } else {
+            bmi = user.calculateBMI();
+            bmr = bmrOf(user);
+            maintenance = (int)Math.round(bmr * 1.4);
+        }
+        int burned = (int)Math.round(user.getCaloriesForEpochDay(today));
+        int goal = (int)Math.round(user.getDailyCalorieGoal());
+        m = new DerivedMetrics(user.getProfileVersion(), user.getHistoryVersion(), today,
+                bmi, bmr, maintenance, burned, goal - burned);
+        user.setMetricsCache(m);
+        return m;
+    }
+
+    // BMR without touching the cache (safe to call from worker threads on a user that is not changing)
+    static int bmrOf(User user) {
         double w = user.getWeightKg();
         double h = user.getHeightCm();
         int age = user.getAge();
@@ -37,13 +92,8 @@ public class GoalManager {
         return (int)Math.round(bmr);
     }
 
-    // Maintenance calories (light activity)
-    public static int getMaintenanceCalories(User user) {
-        return (int)Math.round(getBMR(user) * 1.4);
-    }
-
-    // Recommended intake for deficit
-    public static int getRecommendedIntake(User user, int deficit) {
-        return getMaintenanceCalories(user) - deficit;
+    // Today's epoch day in the default zone, without creating a LocalDate
+    private static long today() {
+        return DailyTotals.epochDay(System.currentTimeMillis());
     }
-}
\ No newline at end of file
+}
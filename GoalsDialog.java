@@ -46,8 +46,7 @@ public class GoalsDialog extends JDialog {
                 int dg = Integer.parseInt(dailyGoalField.getText().trim());
                 double wg = Double.parseDouble(weightGoalField.getText().trim());
                 if (user != null) {
-                    user.setDailyCalorieGoal(dg);
-                    user.setWeightGoalKg(wg);
+                    user.setGoals(dg, wg, user.getDailyWaterGoalMl());
                 }
                 saved = true;
                 dispose();
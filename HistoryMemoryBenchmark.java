@@ -0,0 +1,89 @@
+package fitnesstracker;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Console benchmark for the memory cost of exercise history, in bytes per entry.
+ *
+ * Compares one ExerciseEntry object per entry in an ArrayList (the original layout) with the
+ * columnar ExerciseHistory, and shows what a whole User costs per entry once the daily totals,
+ * rollups and per-exercise stats are included. Sizes are heap deltas after GC, so run with a
+ * fixed heap (e.g. -Xms1g -Xmx1g) for stable numbers.
+ *
+ * Usage: HistoryMemoryBenchmark [entries=2000000] [users=1000]
+ */
+public class HistoryMemoryBenchmark {
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int perUser = Math.max(1, entries / users);
+        int total = perUser * users;
+
+        System.out.println("=== History Memory Benchmark ===");
+        System.out.printf("%d users x %d entries%n", users, perUser);
+
+        long before = usedHeap();
+        List<List<ExerciseEntry>> objects = new ArrayList<>(users);
+        Random rnd = new Random(7);
+        for (int u = 0; u < users; u++) {
+            List<ExerciseEntry> list = new ArrayList<>();
+            long ts = 1_600_000_000_000L;
+            for (int i = 0; i < perUser; i++) {
+                ts += 1 + rnd.nextInt(36_000_000);
+                list.add(new ExerciseEntry(rnd.nextInt(12), rnd.nextInt(80000) / 100.0, ts));
+            }
+            objects.add(list);
+        }
+        report("ArrayList<ExerciseEntry>", usedHeap() - before, total);
+        Reference.reachabilityFence(objects);
+        objects = null;
+
+        before = usedHeap();
+        List<ExerciseHistory> columns = new ArrayList<>(users);
+        rnd = new Random(7);
+        for (int u = 0; u < users; u++) {
+            ExerciseHistory h = new ExerciseHistory();
+            long ts = 1_600_000_000_000L;
+            for (int i = 0; i < perUser; i++) {
+                ts += 1 + rnd.nextInt(36_000_000);
+                h.add(rnd.nextInt(12), rnd.nextInt(80000) / 100.0, ts);
+            }
+            columns.add(h);
+        }
+        report("ExerciseHistory", usedHeap() - before, total);
+        Reference.reachabilityFence(columns);
+        columns = null;
+
+        before = usedHeap();
+        List<User> full = new ArrayList<>(users);
+        rnd = new Random(7);
+        for (int u = 0; u < users; u++) {
+            User user = new User("user" + u, 30, 70, 175, "Female");
+            long ts = 1_600_000_000_000L;
+            for (int i = 0; i < perUser; i++) {
+                ts += 1 + rnd.nextInt(36_000_000);
+                user.addExerciseEntry(rnd.nextInt(12), rnd.nextInt(80000) / 100.0, ts);
+            }
+            full.add(user);
+        }
+        report("User (with aggregates)", usedHeap() - before, total);
+        Reference.reachabilityFence(full);
+        System.out.println("=== End Benchmark ===");
+    }
+
+    private static void report(String label, long bytes, int entries) {
+        System.out.printf("%-26s %8.1f MB  %6.1f bytes/entry%n", label, bytes / (1024.0 * 1024.0), (double) bytes / entries);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,133 @@
+package fitnesstracker;
+
+import javax.swing.table.AbstractTableModel;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Table model that reads rows straight from the selected user's history.
+ *
+ * Nothing is copied when a user is selected: JTable only asks for the visible cells, and those
+ * are formatted on demand with shared formatters. The model listens to the user; new entries are
+ * coalesced into one update per frame (CoalescedRefresh), which fires a single row insert for
+ * entries appended at the end (or one entry anywhere, found by binary search) and one change
+ * event otherwise. Clearing fires one change event. Runs on the EDT, like the user it shows.
+ */
+public class HistoryTableModel extends AbstractTableModel implements UserChangeListener {
+    private static final String[] COLUMNS = {"Exercise", "Calories", "Timestamp"};
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // DecimalFormat is not thread-safe, but the model is only used on the EDT
+    private final DecimalFormat calorieFormat = new DecimalFormat("0.0");
+    private ZoneId zone = ZoneId.systemDefault();
+
+    private User user;
+    // point-in-time view of the user's history, refreshed once per frame while entries arrive
+    private List<ExerciseEntry> rows = Collections.emptyList();
+
+    // entries added since the rows were last refreshed, and whether all of them went to the end
+    private final CoalescedRefresh pendingInserts = new CoalescedRefresh(this::applyInserts);
+    private int pendingCount;
+    private boolean pendingAppendsOnly = true;
+    private long pendingTimestamp;
+
+    // the last row read; getValueAt is called once per column of the same row
+    private int cachedRow = -1;
+    private ExerciseEntry cachedEntry;
+
+    public void setUser(User u) {
+        if (u == user) return;
+        if (user != null) user.removeChangeListener(this);
+        user = u;
+        zone = ZoneId.systemDefault();
+        if (user != null) user.addChangeListener(this);
+        clearPending();
+        refreshRows();
+        fireTableDataChanged();
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    @Override public int getRowCount() { return rows.size(); }
+
+    @Override public int getColumnCount() { return COLUMNS.length; }
+
+    @Override public String getColumnName(int column) { return COLUMNS[column]; }
+
+    @Override public boolean isCellEditable(int row, int column) { return false; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (row != cachedRow) {
+            cachedEntry = rows.get(row);
+            cachedRow = row;
+        }
+        ExerciseEntry e = cachedEntry;
+        switch (column) {
+            case 0: return e.getExerciseName();
+            case 1: return calorieFormat.format(e.getCalories()) + " kcal";
+            default: return TIME_FORMAT.format(Instant.ofEpochMilli(e.getTimestamp()).atZone(zone));
+        }
+    }
+
+    // Entry at a table row (model index)
+    public ExerciseEntry getEntry(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public void entryAdded(User u, ExerciseEntry e) {
+        // equal timestamps keep insertion order, so the entry went to the end unless something is newer
+        long ts = e.getTimestamp();
+        boolean appended = ts == Long.MAX_VALUE || u.historyIndexAtOrAfter(ts + 1) == u.getHistorySize();
+        pendingAppendsOnly &= appended;
+        pendingTimestamp = ts;
+        pendingCount++;
+        pendingInserts.request();
+    }
+
+    @Override
+    public void historyCleared(User u) {
+        clearPending();
+        refreshRows();
+        fireTableDataChanged();
+    }
+
+    // Once per frame: pick up the entries added since the last refresh
+    private void applyInserts() {
+        int added = pendingCount;
+        boolean appendsOnly = pendingAppendsOnly;
+        long ts = pendingTimestamp;
+        clearPending();
+        if (added == 0) return;
+        int oldSize = rows.size();
+        refreshRows();
+        if (appendsOnly) {
+            fireTableRowsInserted(oldSize, oldSize + added - 1);
+        } else if (added == 1) {
+            // the last entry with a timestamp <= its own
+            int row = user.historyIndexAtOrAfter(ts + 1) - 1;
+            fireTableRowsInserted(row, row);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    private void clearPending() {
+        pendingInserts.stop();
+        pendingCount = 0;
+        pendingAppendsOnly = true;
+    }
+
+    private void refreshRows() {
+        rows = user != null ? user.getHistory() : Collections.emptyList();
+        cachedRow = -1;
+        cachedEntry = null;
+    }
+}
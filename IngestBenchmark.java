@@ -0,0 +1,111 @@
+package fitnesstracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Console stress test and benchmark for User.ingest with 1, 4 and 16 producer threads.
+ *
+ * A single-thread executor stands in for the EDT. Every run checks that all entries arrive,
+ * that each producer's entries are applied in the order they were sent and that the calorie
+ * total is exact (no entry lost or applied twice), then prints the throughput and the longest single task the owner thread ran
+ * (how long the UI would have been blocked by one drain).
+ *
+ * Usage: IngestBenchmark [entriesPerThread=200000]
+ */
+public class IngestBenchmark {
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.println("=== Ingest Benchmark ===");
+        System.out.printf("%d entries per thread, queue capacity %d, drain batch %d%n",
+                perThread, User.INGEST_CAPACITY, User.DRAIN_BATCH);
+        boolean ok = true;
+        run(1, Math.min(perThread, 20_000)); // warm-up
+        for (int threads : THREADS) ok &= run(threads, perThread);
+        System.out.println(ok ? "All checks passed" : "CHECKS FAILED");
+        System.out.println("=== End Benchmark ===");
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean run(int threads, int perThread) throws Exception {
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        long[] longestTask = new long[1];
+        User user = new User("bench", 30, 70, 175, "Female");
+        user.setIngestExecutor(task -> owner.execute(() -> {
+            long t0 = System.nanoTime();
+            task.run();
+            longestTask[0] = Math.max(longestTask[0], System.nanoTime() - t0);
+        }));
+
+        // per producer: last sequence number seen on the owner thread, to check arrival order
+        long[] lastSeq = new long[threads];
+        AtomicLong clock = new AtomicLong();
+        boolean[] outOfOrder = new boolean[1];
+        int total = threads * perThread;
+        CountDownLatch applied = new CountDownLatch(total);
+        Arrays.fill(lastSeq, -1);
+        user.addChangeListener(new UserChangeListener() {
+            @Override
+            public void entryAdded(User u, ExerciseEntry e) {
+                long value = (long) e.getCalories();
+                int producer = (int) (value / perThread);
+                long seq = value % perThread;
+                if (seq <= lastSeq[producer]) outOfOrder[0] = true;
+                lastSeq[producer] = seq;
+                applied.countDown();
+            }
+        });
+
+        List<Thread> producers = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < threads; p++) {
+            int producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        // calories encode producer and sequence (whole numbers, so sums are exact);
+                        // timestamps follow the send order, as they would for live data
+                        user.ingest(new ExerciseEntry(0, (double) producer * perThread + i, clock.incrementAndGet()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.start();
+            producers.add(t);
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        boolean done = applied.await(5, TimeUnit.MINUTES);
+        long nanos = System.nanoTime() - t0;
+        for (Thread t : producers) t.join();
+
+        int[] size = new int[1];
+        double[] kcal = new double[1];
+        owner.submit(() -> {
+            size[0] = user.getHistorySize();
+            for (ExerciseHistory.Cursor c = user.historyCursor(); c.next(); ) kcal[0] += c.calories();
+        }).get();
+        owner.shutdown();
+
+        double expected = 0;
+        for (int p = 0; p < threads; p++) expected += (double) p * perThread * perThread + (double) perThread * (perThread - 1) / 2;
+        boolean ok = done && size[0] == total && kcal[0] == expected && !outOfOrder[0];
+        System.out.printf("%2d threads  %9d entries  %7.1f ms  %8.0f entries/s  longest owner task %6.2f ms  %s%n",
+                threads, size[0], nanos / 1e6, total / (nanos / 1e9), longestTask[0] / 1e6, ok ? "ok" : "FAILED");
+        if (!ok) {
+            System.out.printf("  expected %d entries / %.1f kcal, got %d / %.1f, in order: %b%n",
+                    total, expected, size[0], kcal[0], !outOfOrder[0]);
+        }
+        return ok;
+    }
+}
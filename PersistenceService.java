@@ -0,0 +1,122 @@
+package fitnesstracker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind persistence for the user list.
+ *
+ * Each change is journaled immediately by ChangeJournal, so saving costs about the size of the
+ * change. The journal also owns durability: it fsyncs within 50 ms of a change, so a burst of
+ * edits shares one sync and this service schedules none of its own. The data file itself is only
+ * rewritten when the journal asks for compaction (it has grown past its size threshold and a
+ * share of the data file) or when flushNow() is called (Save). It is written to a temp file and
+ * renamed over the original, so a half-written file is never observed.
+ *
+ * Users are owned by a single thread (the EDT in the GUI): userAdded/userRemoved and flushNow()
+ * must run there, and the snapshots for a rewrite are taken there too; they are dropped once the
+ * file is written.
+ * load() runs on a background thread and hands users over as they are read. Tracked users
+ * apply data ingested from other threads (User.ingest) on the owner thread as well.
+ *
+ * A change that cannot be written (journal write or sync, or a rewrite of the data file, e.g. on
+ * a full disk) is reported to the failure handler on the owner thread; until it reports recovery,
+ * which takes a successful flushNow() or load(), the data on disk is behind the users in memory.
+ */
+public class PersistenceService implements Closeable {
+    private final ChangeJournal journal;
+    private final Supplier<List<User>> users;
+    private final Executor ownerThread;
+
+    // Rewriting the data file is disabled until a load has completed: writing a partially loaded
+    // (or cancelled) user list would drop the users that were not read yet
+    private volatile boolean fullyLoaded = false;
+    // the journal asked for compaction before the load completed
+    private volatile boolean compactionWanted;
+
+    /**
+     * @param journal     journal for the data file; its compaction is driven by this service
+     * @param users       current user list, only called on the owner thread
+     * @param ownerThread executor for the thread that mutates users (e.g. SwingUtilities::invokeLater)
+     */
+    public PersistenceService(ChangeJournal journal, Supplier<List<User>> users, Executor ownerThread) {
+        this.journal = journal;
+        this.users = users;
+        this.ownerThread = ownerThread;
+        journal.setCompactionHandler(() -> ownerThread.execute(this::compactIfLoaded));
+    }
+
+    /**
+     * Handler for lost and recovered changes; it runs on the owner thread.
+     * Background rewrites requested by the journal report their failures here too.
+     */
+    public void setFailureHandler(ChangeJournal.FailureHandler handler) {
+        journal.setFailureHandler(new ChangeJournal.FailureHandler() {
+            @Override public void failed(IOException cause) { ownerThread.execute(() -> handler.failed(cause)); }
+            @Override public void recovered() { ownerThread.execute(handler::recovered); }
+        });
+    }
+
+    // The failure that keeps changes from reaching the disk, or null if everything is saved
+    public IOException getFailure() { return journal.getFailure(); }
+
+    /**
+     * Stream users (snapshot + journal) to the sink and start tracking their changes.
+     * Call from a background thread; returns false if the sink cancelled the load.
+     */
+    public boolean load(FitnessDataManager.UserSink sink) throws IOException {
+        fullyLoaded = false;
+        boolean completed = journal.load((u, read, total) -> {
+            u.setIngestExecutor(ownerThread);
+            return sink.accept(u, read, total);
+        });
+        if (completed) {
+            fullyLoaded = true;
+            if (compactionWanted) ownerThread.execute(this::compactIfLoaded);
+        }
+        return completed;
+    }
+
+    public boolean isFullyLoaded() { return fullyLoaded; }
+
+    public void userAdded(User u) {
+        journal.userAdded(u);
+        u.setIngestExecutor(ownerThread);
+    }
+
+    public void userRemoved(User u) {
+        journal.userRemoved(u);
+    }
+
+    /**
+     * Rewrite the data file now from snapshots of all users and start a new, empty journal.
+     * The returned future completes once the file has been replaced.
+     */
+    public Future<?> flushNow() {
+        if (!fullyLoaded) {
+            return CompletableFuture.failedFuture(new IOException("Users are not fully loaded; reload before saving"));
+        }
+        compactionWanted = false;
+        List<User> current = users.get();
+        List<User> copies = new ArrayList<>(current.size());
+        for (User u : current) copies.add(u.snapshot());
+        return journal.compact(copies);
+    }
+
+    // Sync the journal and close it; every change is in the journal, so no rewrite is needed.
+    // Throws the failure if changes were lost and no save has succeeded since
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    // Compaction handler (owner thread); waits for the load to finish if one is running.
+    // A failed rewrite reaches the failure handler through the journal, so the future is not needed
+    private void compactIfLoaded() {
+        if (fullyLoaded) flushNow();
+        else compactionWanted = true;
+    }
+}
@@ -0,0 +1,307 @@
+package fitnesstracker;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Statistics across all users: BMI, BMR and weekly-calorie distributions, calorie goal hit rates
+ * and exercise popularity. Weekly calories are also kept in a QuantileSketch, for percentiles
+ * ("more active than 80% of users") that the fixed-width histogram is too coarse for.
+ *
+ * The user list is split into fixed-size ranges that are analyzed on a ForkJoinPool, each into an
+ * accumulator of its own; partial results are merged pairwise on the way back up. No state is
+ * shared between workers, and because the split does not depend on the number of threads the
+ * result is the same for any parallelism.
+ *
+ * The users are read from the worker threads, so they must not change during the analysis:
+ * pass snapshots (User.snapshot(), O(1) each) of users that are still being edited.
+ */
+public class PopulationAnalytics {
+    // users per leaf task
+    private static final int LEAF_SIZE = 4096;
+
+    private static final double BMI_BIN = 1.0, BMI_MAX = 60.0;
+    private static final double BMR_BIN = 100.0, BMR_MAX = 4000.0;
+    private static final double WEEKLY_BIN = 500.0, WEEKLY_MAX = 20000.0;
+
+    public static Report analyze(List<User> users, int parallelism) {
+        return analyze(users, parallelism, LocalDate.now());
+    }
+
+    // Goal hit rates and weekly calories refer to the 7 days ending at 'today'
+    public static Report analyze(List<User> users, int parallelism, LocalDate today) {
+        long todayDay = today.toEpochDay();
+        int exercises = ExerciseCatalog.size();
+        Task all = new Task(users, 0, users.size(), todayDay, exercises);
+        // a single leaf runs right here; anything larger goes through the pool even with one thread,
+        // so the merge order (and the floating-point sums) do not depend on the parallelism
+        if (users.size() <= LEAF_SIZE) return new Report(all.compute());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            return new Report(pool.invoke(all));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final class Task extends RecursiveTask<Accumulator> {
+        private final List<User> users;
+        private final int from, to;
+        private final long todayDay;
+        private final int exercises;
+
+        Task(List<User> users, int from, int to, long todayDay, int exercises) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+            this.todayDay = todayDay;
+            this.exercises = exercises;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= LEAF_SIZE) {
+                Accumulator acc = new Accumulator(exercises);
+                for (int i = from; i < to; i++) acc.add(users.get(i), todayDay);
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            Task left = new Task(users, from, mid, todayDay, exercises);
+            Task right = new Task(users, mid, to, todayDay, exercises);
+            left.fork();
+            Accumulator r = right.compute();
+            Accumulator l = left.join();
+            l.merge(r);
+            return l;
+        }
+    }
+
+    // Partial result for one range of users
+    private static final class Accumulator {
+        int users;
+        final Distribution bmi = new Distribution(0, BMI_MAX, BMI_BIN);
+        final Distribution bmr = new Distribution(0, BMR_MAX, BMR_BIN);
+        final Distribution weeklyCalories = new Distribution(0, WEEKLY_MAX, WEEKLY_BIN);
+        final QuantileSketch weeklySketch = new QuantileSketch();
+        int usersWithGoal, goalHitToday;
+        long goalDays, goalDaysHit;
+        // per catalog id: users who did the exercise, entries, calories
+        int[] exerciseUsers;
+        long[] exerciseEntries;
+        double[] exerciseCalories;
+
+        Accumulator(int exercises) {
+            exerciseUsers = new int[exercises];
+            exerciseEntries = new long[exercises];
+            exerciseCalories = new double[exercises];
+        }
+
+        void add(User u, long todayDay) {
+            users++;
+            if (u.getHeightCm() > 0) bmi.add(u.calculateBMI());
+            bmr.add(GoalManager.bmrOf(u));
+
+            int goal = u.getDailyCalorieGoal();
+            if (goal > 0) usersWithGoal++;
+            double week = 0;
+            for (long d = todayDay - 6; d <= todayDay; d++) {
+                double kcal = u.getCaloriesForEpochDay(d);
+                week += kcal;
+                if (goal > 0) {
+                    goalDays++;
+                    if (kcal >= goal) {
+                        goalDaysHit++;
+                        if (d == todayDay) goalHitToday++;
+                    }
+                }
+            }
+            weeklyCalories.add(week);
+            weeklySketch.add(week);
+
+            ExerciseStats stats = u.getExerciseStats();
+            for (int id : stats.exerciseIds()) {
+                if (id < 0) continue;
+                if (id >= exerciseUsers.length) grow(id + 1);
+                exerciseUsers[id]++;
+                exerciseEntries[id] += stats.getCount(id);
+                exerciseCalories[id] += stats.getTotalCalories(id);
+            }
+        }
+
+        void merge(Accumulator o) {
+            users += o.users;
+            bmi.merge(o.bmi);
+            bmr.merge(o.bmr);
+            weeklyCalories.merge(o.weeklyCalories);
+            weeklySketch.merge(o.weeklySketch);
+            usersWithGoal += o.usersWithGoal;
+            goalHitToday += o.goalHitToday;
+            goalDays += o.goalDays;
+            goalDaysHit += o.goalDaysHit;
+            if (o.exerciseUsers.length > exerciseUsers.length) grow(o.exerciseUsers.length);
+            for (int i = 0; i < o.exerciseUsers.length; i++) {
+                exerciseUsers[i] += o.exerciseUsers[i];
+                exerciseEntries[i] += o.exerciseEntries[i];
+                exerciseCalories[i] += o.exerciseCalories[i];
+            }
+        }
+
+        // exercises registered after the analysis started
+        private void grow(int n) {
+            exerciseUsers = Arrays.copyOf(exerciseUsers, n);
+            exerciseEntries = Arrays.copyOf(exerciseEntries, n);
+            exerciseCalories = Arrays.copyOf(exerciseCalories, n);
+        }
+    }
+
+    /**
+     * Count, mean, standard deviation, min/max and a fixed-width histogram of a value.
+     * Values below 'lo' go to the first bin and values at or above 'hi' to the last one.
+     */
+    public static final class Distribution {
+        private final double lo, binWidth;
+        private final long[] bins;
+        private long count;
+        private double sum, sumSq;
+        private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+        Distribution(double lo, double hi, double binWidth) {
+            this.lo = lo;
+            this.binWidth = binWidth;
+            this.bins = new long[(int) Math.ceil((hi - lo) / binWidth)];
+        }
+
+        void add(double v) {
+            if (Double.isNaN(v)) return;
+            int b = (int) Math.floor((v - lo) / binWidth);
+            bins[Math.max(0, Math.min(bins.length - 1, b))]++;
+            count++;
+            sum += v;
+            sumSq += v * v;
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+
+        void merge(Distribution o) {
+            for (int i = 0; i < bins.length; i++) bins[i] += o.bins[i];
+            count += o.count;
+            sum += o.sum;
+            sumSq += o.sumSq;
+            if (o.min < min) min = o.min;
+            if (o.max > max) max = o.max;
+        }
+
+        public long getCount() { return count; }
+
+        public double getMean() { return count > 0 ? sum / count : 0.0; }
+
+        public double getStdDev() {
+            if (count < 2) return 0.0;
+            double mean = sum / count;
+            return Math.sqrt(Math.max(0.0, sumSq / count - mean * mean));
+        }
+
+        public double getMin() { return count > 0 ? min : 0.0; }
+
+        public double getMax() { return count > 0 ? max : 0.0; }
+
+        // Lower bound of histogram bin i
+        public double getBinStart(int i) { return lo + i * binWidth; }
+
+        public double getBinWidth() { return binWidth; }
+
+        public long[] getHistogram() { return bins.clone(); }
+    }
+
+    // Usage of one exercise across the population
+    public static final class ExerciseUsage {
+        private final String name;
+        private final int users;
+        private final long entries;
+        private final double calories;
+
+        ExerciseUsage(String name, int users, long entries, double calories) {
+            this.name = name;
+            this.users = users;
+            this.entries = entries;
+            this.calories = calories;
+        }
+
+        public String getName() { return name; }
+
+        // Number of users with at least one entry
+        public int getUsers() { return users; }
+
+        public long getEntries() { return entries; }
+
+        public double getCalories() { return calories; }
+    }
+
+    public static final class Report {
+        private final int userCount;
+        private final Distribution bmi, bmr, weeklyCalories;
+        private final QuantileSketch weeklySketch;
+        private final int usersWithGoal, goalHitToday;
+        private final long goalDays, goalDaysHit;
+        private final List<ExerciseUsage> exercises;
+
+        private Report(Accumulator acc) {
+            userCount = acc.users;
+            bmi = acc.bmi;
+            bmr = acc.bmr;
+            weeklyCalories = acc.weeklyCalories;
+            weeklySketch = acc.weeklySketch;
+            usersWithGoal = acc.usersWithGoal;
+            goalHitToday = acc.goalHitToday;
+            goalDays = acc.goalDays;
+            goalDaysHit = acc.goalDaysHit;
+            List<ExerciseUsage> list = new ArrayList<>();
+            for (int id = 0; id < acc.exerciseUsers.length; id++) {
+                if (acc.exerciseUsers[id] == 0) continue;
+                list.add(new ExerciseUsage(ExerciseCatalog.nameOf(id), acc.exerciseUsers[id],
+                        acc.exerciseEntries[id], acc.exerciseCalories[id]));
+            }
+            list.sort(Comparator.comparingInt(ExerciseUsage::getUsers).reversed()
+                    .thenComparing(Comparator.comparingLong(ExerciseUsage::getEntries).reversed()));
+            exercises = Collections.unmodifiableList(list);
+        }
+
+        public int getUserCount() { return userCount; }
+
+        public Distribution getBmi() { return bmi; }
+
+        public Distribution getBmr() { return bmr; }
+
+        // Calories burned per user over the 7 days ending today
+        public Distribution getWeeklyCalories() { return weeklyCalories; }
+
+        // The same values as a sketch, for quantiles (median, p90, ...) of weekly calories
+        public QuantileSketch getWeeklyCaloriesSketch() { return weeklySketch.copy(); }
+
+        // Percentile rank (0-100) of a weekly calorie total within the population
+        public double getWeeklyCaloriesPercentile(double kcal) {
+            return 100.0 * weeklySketch.rank(kcal);
+        }
+
+        public int getUsersWithGoal() { return usersWithGoal; }
+
+        // Share of users with a daily goal who reached it today
+        public double getGoalHitRateToday() {
+            return usersWithGoal > 0 ? (double) goalHitToday / usersWithGoal : 0.0;
+        }
+
+        // Share of the last 7 days on which users with a goal reached it
+        public double getGoalHitRateWeek() {
+            return goalDays > 0 ? (double) goalDaysHit / goalDays : 0.0;
+        }
+
+        // Exercises by number of users doing them, most popular first
+        public List<ExerciseUsage> getExercisePopularity() { return exercises; }
+    }
+}
@@ -0,0 +1,107 @@
+package fitnesstracker;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Console benchmark for PopulationAnalytics.analyze on a synthetic population, with 1..N threads.
+ *
+ * Builds the users in memory (profiles, goals and a few weeks of entries each), then times the
+ * analysis for 1, 2, 4, ... threads up to the number of cores (or the given maximum), and prints
+ * the speedup over one thread. The report must not depend on the thread count; each run is
+ * checked against the single-threaded one.
+ *
+ * The population is kept in memory, about 11.5 KB of heap per user with 40 entries each, so the
+ * default million users need about 12 GB: run with -Xmx16g, or pass fewer users.
+ *
+ * Usage: PopulationBenchmark [users=1000000] [entriesPerUser=40] [maxThreads=cores]
+ */
+public class PopulationBenchmark {
+    private static final int RUNS = 3;
+    // measured heap per user with 40 entries, rounded up; fewer entries do not save much
+    private static final long BYTES_PER_USER_40 = 12_000;
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int perUser = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        LocalDate today = LocalDate.now();
+
+        System.out.println("=== Population Benchmark ===");
+        long needed = users * BYTES_PER_USER_40 * Math.max(40, perUser) / 40;
+        if (needed > Runtime.getRuntime().maxMemory()) {
+            // fail before spending minutes on generating users that cannot fit
+            System.out.printf("%d users x %d entries need about %.1f GB of heap, have %.1f GB; run with a larger -Xmx or fewer users%n",
+                    users, perUser, needed / 1e9, Runtime.getRuntime().maxMemory() / 1e9);
+            System.out.println("=== End Benchmark ===");
+            return;
+        }
+        long t0 = System.nanoTime();
+        List<User> population = population(users, perUser, today, 42);
+        System.out.printf("Generated %d users x %d entries in %.1f s, %d cores%n",
+                users, perUser, (System.nanoTime() - t0) / 1e9, Runtime.getRuntime().availableProcessors());
+
+        PopulationAnalytics.Report reference = PopulationAnalytics.analyze(population, 1, today);
+        double single = 0;
+        List<Integer> counts = new ArrayList<>();
+        for (int p = 1; p < maxThreads; p *= 2) counts.add(p);
+        counts.add(maxThreads);
+        for (int threads : counts) {
+            PopulationAnalytics.Report r = PopulationAnalytics.analyze(population, threads, today); // warm-up
+            boolean same = sameReport(reference, r);
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long s = System.nanoTime();
+                PopulationAnalytics.analyze(population, threads, today);
+                nanos[i] = System.nanoTime() - s;
+            }
+            Arrays.sort(nanos);
+            double best = nanos[0] / 1e6, median = nanos[RUNS / 2] / 1e6;
+            if (threads == 1) single = best;
+            System.out.printf("%3d threads  best %8.1f ms  median %8.1f ms  speedup %5.2fx  %s%n",
+                    threads, best, median, single / best, same ? "same result" : "RESULT DIFFERS");
+        }
+        System.out.println("=== End Benchmark ===");
+    }
+
+    /**
+     * Users with random profiles, a daily goal for most of them, and 'perUser' entries spread over
+     * the four weeks before 'today'.
+     */
+    static List<User> population(int users, int perUser, LocalDate today, long seed) {
+        Random rnd = new Random(seed);
+        List<Exercise> exercises = ExerciseCatalog.defaultExercises();
+        String[] sexes = {"Female", "Male"};
+        long end = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long span = 28L * 24 * 3600 * 1000;
+        List<User> list = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User u = new User("user" + i, 18 + rnd.nextInt(60), 45 + rnd.nextInt(70),
+                    150 + rnd.nextInt(50), sexes[rnd.nextInt(2)]);
+            int goal = rnd.nextInt(5) == 0 ? 0 : 200 + rnd.nextInt(800);
+            u.setGoals(goal, 50 + rnd.nextInt(40), 2000 + rnd.nextInt(1000));
+            for (int e = 0; e < perUser; e++) {
+                Exercise ex = exercises.get(rnd.nextInt(exercises.size()));
+                u.addExerciseEntry(ex.getName(), 20 + rnd.nextInt(60000) / 100.0, end - 1 - (long) (rnd.nextDouble() * span));
+            }
+            list.add(u);
+        }
+        return list;
+    }
+
+    // analyze() merges in the same order for any thread count, so even the sums must be identical
+    static boolean sameReport(PopulationAnalytics.Report a, PopulationAnalytics.Report b) {
+        return a.getUserCount() == b.getUserCount()
+                && Arrays.equals(a.getBmi().getHistogram(), b.getBmi().getHistogram())
+                && Arrays.equals(a.getWeeklyCalories().getHistogram(), b.getWeeklyCalories().getHistogram())
+                && a.getWeeklyCalories().getMean() == b.getWeeklyCalories().getMean()
+                && a.getBmr().getMean() == b.getBmr().getMean()
+                && a.getGoalHitRateWeek() == b.getGoalHitRateWeek()
+                && a.getGoalHitRateToday() == b.getGoalHitRateToday()
+                && a.getExercisePopularity().size() == b.getExercisePopularity().size();
+    }
+}
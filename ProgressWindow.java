@@ -6,15 +6,41 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * ProgressWindow displays daily and weekly calorie trends derived from user's exercise history.
- * It shows the last 7 days as a bar chart and a goal indicator line.
+ * It shows the last 7 days, weeks, months or years as a bar chart and a goal indicator line,
+ * or the whole history as a zoomable timeline (TimelinePanel).
+ * The window follows the user's changes while it is open; bursts of changes are coalesced into
+ * one refresh per frame (CoalescedRefresh), and only bars whose value changed are repainted.
  */
 public class ProgressWindow extends JFrame {
     private final User user;
     private final ChartPanel chartPanel;
+    private final TimelinePanel timelinePanel = new TimelinePanel();
+    private final CardLayout cards = new CardLayout();
+    private final JPanel center = new JPanel(cards);
+    // the last entry shows the timeline instead of the bar chart
+    private final JComboBox<String> periodBox = new JComboBox<>(new String[]{"Days", "Weeks", "Months", "Years", "Timeline"});
+    private static final TimeRollups.Resolution[] PERIODS = {
+            TimeRollups.Resolution.DAY, TimeRollups.Resolution.WEEK, TimeRollups.Resolution.MONTH, TimeRollups.Resolution.YEAR};
+    // bar labels (weeks are labelled by their Monday) and chart titles, per entry of PERIODS
+    private static final String[] LABEL_PATTERNS = {"E", "d MMM", "MMM", "yyyy"};
+    private static final String[] TITLES = {
+            "Daily Calories (last 7 days)", "Weekly Calories (last 7 weeks)",
+            "Monthly Calories (last 7 months)", "Yearly Calories (last 7 years)"};
+
+    private final CoalescedRefresh pendingRefresh = new CoalescedRefresh(this::refresh);
+    private final UserChangeListener changes = new UserChangeListener() {
+        @Override public void entryAdded(User u, ExerciseEntry entry) { pendingRefresh.request(); }
+        @Override public void historyCleared(User u) { pendingRefresh.request(); }
+        @Override public void goalsChanged(User u) { pendingRefresh.request(); }
+    };
+
+    // bar labels of the last refresh, reused while the period and the current bucket stay the same
+    private List<String> labels = new ArrayList<>();
+    private int labelsPeriod = -1;
+    private long labelsLast;
 
     public ProgressWindow(User user) {
         super("Progress - " + (user != null ? user.getName() : "User"));
@@ -27,7 +53,10 @@ public class ProgressWindow extends JFrame {
         setLayout(new BorderLayout());
 
         chartPanel = new ChartPanel();
-        add(chartPanel, BorderLayout.CENTER);
+        timelinePanel.setUser(user);
+        center.add(chartPanel, "bars");
+        center.add(timelinePanel, "timeline");
+        add(center, BorderLayout.CENTER);
 
         JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         bottom.setOpaque(false);
@@ -39,122 +68,168 @@ public class ProgressWindow extends JFrame {
         JButton close = new RoundedButton("Close");
         close.setBackground(new Color(0xAEE6CE));
         close.addActionListener(e -> dispose());
+        periodBox.addActionListener(e -> refresh());
+        bottom.add(periodBox);
         bottom.add(refresh);
         bottom.add(close);
         add(bottom, BorderLayout.SOUTH);
 
+        if (user != null) user.addChangeListener(changes);
         refresh();
     }
 
+    @Override
+    public void dispose() {
+        if (user != null) user.removeChangeListener(changes);
+        pendingRefresh.stop();
+        super.dispose();
+    }
+
     public void refresh() {
-        // Build last 7 days data
-        Map<LocalDate, Double> map = user.getDailyTotalsMap();
-        LocalDate today = LocalDate.now();
-        List<String> labels = new ArrayList<>();
-        List<Double> values = new ArrayList<>();
-        DateTimeFormatter df = DateTimeFormatter.ofPattern("E");
-        for (int i = 6; i >= 0; i--) {
-            LocalDate d = today.minusDays(i);
-            labels.add(d.format(df));
-            values.add(map.getOrDefault(d, 0.0));
+        // Build data for the last 7 periods from the user's rollups (one lookup per bar)
+        int period = Math.max(0, periodBox.getSelectedIndex());
+        if (period >= PERIODS.length) {
+            cards.show(center, "timeline");
+            timelinePanel.refresh();
+            return;
+        }
+        cards.show(center, "bars");
+        TimeRollups.Resolution res = PERIODS[period];
+        long last = TimeRollups.bucketOf(res, LocalDate.now());
+        // the EDT owns the user, so the live rollups are read directly; a snapshot would only make
+        // the next write copy a page
+        double[] totals = user.getRollups().getCalories(res, last - 6, 7);
+        if (period != labelsPeriod || last != labelsLast) {
+            labels = new ArrayList<>();
+            DateTimeFormatter df = DateTimeFormatter.ofPattern(LABEL_PATTERNS[period]);
+            for (int i = 0; i < 7; i++) labels.add(TimeRollups.bucketStart(res, last - 6 + i).format(df));
+            labelsPeriod = period;
+            labelsLast = last;
         }
-        double goal = user.getDailyCalorieGoal();
-        chartPanel.setData(labels, values, goal);
-        chartPanel.repaint();
+        List<Double> values = new ArrayList<>(7);
+        for (int i = 0; i < 7; i++) values.add(totals[i]);
+        // the daily goal only maps cleanly onto days and weeks
+        double goal = res == TimeRollups.Resolution.DAY ? user.getDailyCalorieGoal()
+                : res == TimeRollups.Resolution.WEEK ? user.getDailyCalorieGoal() * 7.0 : 0.0;
+        chartPanel.setData(TITLES[period], labels, values, goal);
     }
 
     // Inner chart panel draws pastel bar chart and goal line
-    private static class ChartPanel extends JPanel {
+    static class ChartPanel extends CachedChartPanel {
+        // pastel palette
+        private static final Color[] PALETTE = { new Color(0xAEE6CE), new Color(0xB3D9FF), new Color(0x7CC8B4) };
+        private static final Color GOAL_COLOR = new Color(120,200,180,180);
+        private static final Stroke GOAL_STROKE = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0f, new float[]{6f,6f}, 0f);
+        private static final int GAP = 12;
+
         private List<String> labels = new ArrayList<>();
         private List<Double> values = new ArrayList<>();
+        // value labels and goal label, formatted once per data set
+        private List<String> valueLabels = new ArrayList<>();
+        private String goalLabel = "";
         private double goal = 0.0;
+        private double max = 1;
+        private String title = "";
 
         public ChartPanel() {
-            setBackground(new Color(0xF3FBF8));
             setBorder(BorderFactory.createEmptyBorder(18,18,18,18));
         }
 
-        public void setData(List<String> labels, List<Double> values, double goal) {
+        public void setData(String title, List<String> labels, List<Double> values, double goal) {
+            double newMax = 1; for (Double v : values) if (v > newMax) newMax = v;
+            if (goal > newMax) newMax = goal;
+            List<String> newValueLabels = new ArrayList<>(values.size());
+            for (Double v : values) newValueLabels.add(String.format("%.0f", v));
+
+            // same axes and scale: only the bars whose value changed need redrawing
+            Rectangle changed = null;
+            boolean sameLayout = title.equals(this.title) && labels.equals(this.labels)
+                    && goal == this.goal && newMax == max && values.size() == this.values.size();
+            if (sameLayout) {
+                for (int i = 0; i < values.size(); i++) {
+                    if (values.get(i).equals(this.values.get(i))) continue;
+                    Rectangle r = barColumn(i, values.size(), valueLabels.get(i), newValueLabels.get(i));
+                    changed = changed == null ? r : changed.union(r);
+                }
+            }
+
+            this.title = title;
             this.labels = labels;
             this.values = values;
+            this.valueLabels = newValueLabels;
             this.goal = goal;
+            this.goalLabel = "Goal: " + String.format("%.0f kcal", goal);
+            this.max = newMax;
+            if (!sameLayout) dataChanged();
+            else if (changed != null) dataChanged(changed);
         }
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-            int w = getWidth();
-            int h = getHeight();
+        // Column of the chart covered by bar i and its labels
+        private Rectangle barColumn(int i, int n, String oldValue, String newValue) {
+            int w = getWidth(), h = getHeight();
+            int left = 40, bottom = h - 60;
+            int plotW = w - left - 40;
+            int barW = Math.max(20, (plotW - (n+1)*GAP) / Math.max(1, n));
+            int bx = left + GAP + i * (barW + GAP);
+            int textW = Math.max(label(oldValue).width(), label(newValue).width());
+            int half = Math.max(barW, Math.max(textW, label(labels.get(i)).width())) / 2 + 2;
+            int cx = bx + barW / 2;
+            return new Rectangle(cx - half, 40, 2 * half, bottom + 20 - 40);
+        }
 
+        @Override
+        protected void renderChart(Graphics2D g2, int w, int h) {
             // Draw title
-            g2.setFont(new Font("SansSerif", Font.BOLD, 16));
-            g2.setColor(new Color(28,60,60));
-            g2.drawString("Daily Calories (last 7 days)", 12, 22);
+            g2.setColor(TEXT_COLOR);
+            title(title).draw(g2, 12, 22);
 
             if (values == null || values.isEmpty()) {
-                g2.setFont(new Font("SansSerif", Font.PLAIN, 14));
-                g2.drawString("No activity data available.", 12, 48);
-                g2.dispose();
+                message("No activity data available.").draw(g2, 12, 48);
                 return;
             }
 
-            double max = 1; for (Double v : values) if (v > max) max = v;
-            if (goal > max) max = goal;
-
             int left = 40, top = 60, bottom = h - 60;
             int plotH = bottom - top;
             int plotW = w - left - 40;
 
             int n = values.size();
-            int gap = 12;
-            int barW = Math.max(20, (plotW - (n+1)*gap) / Math.max(1, n));
+            int barW = Math.max(20, (plotW - (n+1)*GAP) / Math.max(1, n));
 
             // draw background panel
-            g2.setColor(new Color(255,255,255,200));
+            g2.setColor(PLOT_BACKGROUND);
             g2.fillRoundRect(12, 40, w-24, h-88, 14, 14);
 
             // draw goal line
             if (goal > 0) {
                 int gy = bottom - (int) Math.round((goal/max) * plotH);
-                g2.setColor(new Color(120,200,180,180));
-                g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0f, new float[]{6f,6f}, 0f));
+                g2.setColor(GOAL_COLOR);
+                Stroke s = g2.getStroke();
+                g2.setStroke(GOAL_STROKE);
                 g2.drawLine(left, gy, left+plotW, gy);
-                g2.setFont(new Font("SansSerif", Font.PLAIN, 12));
-                g2.setColor(new Color(28,60,60));
-                g2.drawString("Goal: " + String.format("%.0f kcal", goal), left+plotW-100, gy-6);
+                g2.setStroke(s);
+                g2.setColor(TEXT_COLOR);
+                label(goalLabel).draw(g2, left+plotW-100, gy-6);
             }
 
-            // pastel palette
-            Color[] palette = new Color[]{ new Color(0xAEE6CE), new Color(0xB3D9FF), new Color(0x7CC8B4) };
-
-            int x = left + gap;
-            g2.setFont(new Font("SansSerif", Font.PLAIN, 12));
+            int x = left + GAP;
             for (int i = 0; i < n; i++) {
                 double val = values.get(i);
                 int barH = (int) Math.round((val / max) * (plotH - 10));
-                int bx = x + i * (barW + gap);
+                int bx = x + i * (barW + GAP);
                 int by = bottom - barH;
 
-                Color c = palette[i % palette.length];
-                g2.setColor(c);
+                g2.setColor(PALETTE[i % PALETTE.length]);
                 g2.fillRoundRect(bx, by, barW, barH, 8, 8);
 
                 // value label
-                g2.setColor(new Color(28,60,60));
-                String valStr = String.format("%.0f", val);
-                int vsW = g2.getFontMetrics().stringWidth(valStr);
-                g2.drawString(valStr, bx + (barW - vsW)/2, by - 6);
+                g2.setColor(TEXT_COLOR);
+                Text valStr = label(valueLabels.get(i));
+                valStr.draw(g2, bx + (barW - valStr.width())/2, by - 6);
 
                 // x-label
-                String lbl = labels.get(i);
-                int lblW = g2.getFontMetrics().stringWidth(lbl);
-                g2.drawString(lbl, bx + (barW - lblW)/2, bottom + 16);
+                Text lbl = label(labels.get(i));
+                lbl.draw(g2, bx + (barW - lbl.width())/2, bottom + 16);
             }
-
-            g2.dispose();
         }
     }
 
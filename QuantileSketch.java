@@ -0,0 +1,246 @@
+package fitnesstracker;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles of a stream of values in bounded memory (a KLL sketch).
+ *
+ * Values go into a stack of buffers ("compactors"). When the sketch is over capacity, the lowest
+ * full buffer is sorted and every other value is promoted to the next level with twice the weight,
+ * so a level-h value stands for 2^h inputs. Capacities shrink geometrically towards the lower levels,
+ * which keeps about 3k values in total however many are added; with the default k = 200 ranks are
+ * typically within 1-2% of the exact ones. min, max and count are exact.
+ *
+ * Sketches can be merged (e.g. one per shard or per thread, combined at the end), and the result
+ * is about as accurate as a sketch fed all the values. The choice of which half to promote comes from a
+ * seeded generator, so the same inputs in the same order always give the same answers.
+ * Not thread-safe.
+ */
+public class QuantileSketch {
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    // levels[h] holds sizes[h] values of weight 2^h
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    // capacity of each level, recomputed when a level is added, and their sum
+    private int[] capacities = new int[0];
+    private int capacity;
+    // sum of sizes
+    private int retained;
+    private long count;
+    private double min = Double.NaN, max = Double.NaN;
+    private long random = 0x9E3779B97F4A7C15L;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY * 4) throw new IllegalArgumentException("k too small: " + k);
+        this.k = k;
+        setCapacities(1);
+        levels[0] = new double[capacities[0]];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (count == 0 || value < min) min = value;
+        if (count == 0 || value > max) max = value;
+        count++;
+        push(0, value);
+        if (retained >= capacity) compress();
+    }
+
+    // Add all values summarized by another sketch
+    public void merge(QuantileSketch other) {
+        if (other == this) other = other.copy();
+        if (other.count == 0) return;
+        if (count == 0 || other.min < min) min = other.min;
+        if (count == 0 || other.max > max) max = other.max;
+        count += other.count;
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) push(h, other.levels[h][i]);
+        }
+        compress();
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch c = new QuantileSketch(k);
+        c.levels = new double[levels.length][];
+        for (int h = 0; h < levels.length; h++) c.levels[h] = levels[h].clone();
+        c.sizes = sizes.clone();
+        c.capacities = capacities.clone();
+        c.capacity = capacity;
+        c.retained = retained;
+        c.count = count;
+        c.min = min;
+        c.max = max;
+        c.random = random;
+        return c;
+    }
+
+    public long getCount() { return count; }
+
+    public boolean isEmpty() { return count == 0; }
+
+    // Exact minimum and maximum; NaN when empty
+    public double getMin() { return min; }
+
+    public double getMax() { return max; }
+
+    // Number of values currently kept (bounded by about 3k)
+    public int getRetained() {
+        return retained;
+    }
+
+    /**
+     * Approximate value at quantile q (0 = minimum, 0.5 = median, 1 = maximum); NaN when empty.
+     */
+    public double quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    // Several quantiles at once (one sort of the retained values)
+    public double[] quantiles(double... qs) {
+        double[] out = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(out, Double.NaN);
+            return out;
+        }
+        Sorted s = sorted();
+        for (int i = 0; i < qs.length; i++) {
+            double q = qs[i];
+            if (q <= 0) { out[i] = min; continue; }
+            if (q >= 1) { out[i] = max; continue; }
+            double target = q * count;
+            int j = 0;
+            while (j < s.values.length - 1 && s.cumulative[j] < target) j++;
+            out[i] = s.values[j];
+        }
+        return out;
+    }
+
+    /**
+     * Approximate fraction of the values that are <= value, in [0, 1]; 0 when empty.
+     * Multiply by 100 for a percentile rank ("in the 80th percentile").
+     */
+    public double rank(double value) {
+        if (count == 0) return 0.0;
+        if (value < min) return 0.0;
+        if (value >= max) return 1.0;
+        long weight = 0;
+        for (int h = 0; h < levels.length; h++) {
+            double[] buf = levels[h];
+            for (int i = 0; i < sizes[h]; i++) if (buf[i] <= value) weight += 1L << h;
+        }
+        return (double) weight / count;
+    }
+
+    // -------- compaction --------
+
+    // Level capacities for a stack of n levels; the top level gets k, each level below two thirds of the one above
+    private void setCapacities(int n) {
+        capacities = new int[n];
+        capacity = 0;
+        for (int h = 0; h < n; h++) {
+            int depth = n - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+            capacity += capacities[h];
+        }
+    }
+
+    private void push(int h, double value) {
+        while (h >= levels.length) addLevel();
+        if (sizes[h] == levels[h].length) levels[h] = Arrays.copyOf(levels[h], Math.max(4, levels[h].length * 2));
+        levels[h][sizes[h]++] = value;
+        retained++;
+    }
+
+    private void addLevel() {
+        int n = levels.length;
+        levels = Arrays.copyOf(levels, n + 1);
+        sizes = Arrays.copyOf(sizes, n + 1);
+        setCapacities(n + 1);
+        levels[n] = new double[capacities[n]];
+    }
+
+    // While the sketch as a whole is over capacity, compact the lowest over-full level. Compacting
+    // only as much as needed keeps the most values at the low levels, where they carry the least
+    // weight; after a merge this matters most, as many levels can be over-full at once
+    private void compress() {
+        while (retained >= capacity) {
+            int h = 0;
+            while (sizes[h] < capacities[h]) h++;
+            compact(h);
+        }
+    }
+
+    // Sort level h and promote every other value (random half) to level h + 1
+    private void compact(int h) {
+        double[] buf = levels[h];
+        int n = sizes[h];
+        Arrays.sort(buf, 0, n);
+        // an odd value out stays behind so the total weight is preserved exactly
+        int pairs = n / 2;
+        double leftover = (n & 1) != 0 ? buf[n - 1] : Double.NaN;
+        int offset = nextBit();
+        if (h + 1 >= levels.length) addLevel();
+        for (int i = 0; i < pairs; i++) push(h + 1, buf[2 * i + offset]);
+        sizes[h] = 0;
+        retained -= n;
+        if ((n & 1) != 0) {
+            levels[h][sizes[h]++] = leftover;
+            retained++;
+        }
+    }
+
+    private int nextBit() {
+        // xorshift64
+        long x = random;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        random = x;
+        return (int) (x >>> 63);
+    }
+
+    // Retained values in order with their cumulative weights
+    private static final class Sorted {
+        final double[] values;
+        final double[] cumulative;
+
+        Sorted(double[] values, double[] cumulative) {
+            this.values = values;
+            this.cumulative = cumulative;
+        }
+    }
+
+    private Sorted sorted() {
+        int n = getRetained();
+        double[] values = new double[n];
+        long[] weights = new long[n];
+        int m = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[m] = levels[h][i];
+                weights[m++] = 1L << h;
+            }
+        }
+        // sort values and weights together (indices by value)
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] v = new double[n];
+        double[] cum = new double[n];
+        double c = 0;
+        for (int i = 0; i < n; i++) {
+            v[i] = values[order[i]];
+            c += weights[order[i]];
+            cum[i] = c;
+        }
+        return new Sorted(v, cum);
+    }
+}
@@ -1,7 +1,12 @@
 package fitnesstracker;
 
 import java.io.File;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 public class TestRun {
     public static void main(String[] args) {
@@ -31,6 +36,102 @@ public class TestRun {
             ex.printStackTrace();
         }
 
+        checkQuantileSketch();
+        checkPopulationAnalytics();
+
         System.out.println("=== End Test ===");
     }
+
+    // QuantileSketch ranks against the exact ones, fed directly and merged from 8 shards
+    private static void checkQuantileSketch() {
+        Random rnd = new Random(3);
+        double[] values = new double[200_000];
+        for (int i = 0; i < values.length; i++) values[i] = rnd.nextGaussian() * 100 + (i % 7) * 30;
+        QuantileSketch direct = new QuantileSketch();
+        for (double v : values) direct.add(v);
+        QuantileSketch merged = new QuantileSketch();
+        for (int shard = 0; shard < 8; shard++) {
+            QuantileSketch part = new QuantileSketch();
+            for (int i = shard; i < values.length; i += 8) part.add(values[i]);
+            merged.merge(part);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (QuantileSketch q : new QuantileSketch[] {direct, merged}) {
+            double worst = 0;
+            for (int p = 1; p < 100; p++) {
+                int i = Arrays.binarySearch(sorted, q.quantile(p / 100.0));
+                worst = Math.max(worst, Math.abs((double) (i >= 0 ? i + 1 : -i - 1) / sorted.length - p / 100.0));
+            }
+            boolean ok = q.getCount() == values.length && q.getMin() == sorted[0]
+                    && q.getMax() == sorted[sorted.length - 1] && worst < 0.01;
+            System.out.printf("QuantileSketch %s: %s (%d values kept, worst rank error %.4f)\n",
+                    q == direct ? "direct" : "8-way merge", ok ? "OK" : "MISMATCH", q.getRetained(), worst);
+        }
+    }
+
+    // PopulationAnalytics on several threads against a plain sequential pass over the histories
+    private static void checkPopulationAnalytics() {
+        LocalDate today = LocalDate.now();
+        // more users than one leaf task, so the pool splits and merges
+        List<User> users = PopulationBenchmark.population(10_000, 20, today, 7);
+        PopulationAnalytics.Report r = PopulationAnalytics.analyze(users, 4, today);
+
+        long todayDay = today.toEpochDay();
+        double bmiSum = 0, weeklySum = 0;
+        int withGoal = 0, hitToday = 0;
+        long goalDays = 0, goalDaysHit = 0;
+        double[] weekly = new double[users.size()];
+        Map<String, long[]> perExercise = new HashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            User u = users.get(i);
+            bmiSum += u.calculateBMI();
+            double[] days = new double[7];
+            Map<String, Boolean> seen = new HashMap<>();
+            for (ExerciseHistory.Cursor c = u.historyCursor(); c.next(); ) {
+                long d = DailyTotals.epochDay(c.timestamp());
+                if (d > todayDay - 7 && d <= todayDay) days[(int) (d - todayDay + 6)] += c.calories();
+                long[] e = perExercise.computeIfAbsent(c.exerciseName(), k -> new long[2]);
+                e[1]++;
+                if (seen.put(c.exerciseName(), true) == null) e[0]++;
+            }
+            int goal = u.getDailyCalorieGoal();
+            if (goal > 0) withGoal++;
+            for (int d = 0; d < 7; d++) {
+                weekly[i] += days[d];
+                if (goal > 0) {
+                    goalDays++;
+                    if (days[d] >= goal) {
+                        goalDaysHit++;
+                        if (d == 6) hitToday++;
+                    }
+                }
+            }
+            weeklySum += weekly[i];
+        }
+        Arrays.sort(weekly);
+
+        boolean ok = r.getUserCount() == users.size()
+                && Math.abs(r.getBmi().getMean() - bmiSum / users.size()) < 1e-9
+                && Math.abs(r.getWeeklyCalories().getMean() - weeklySum / users.size()) < 1e-6
+                && r.getUsersWithGoal() == withGoal
+                && r.getGoalHitRateToday() == (double) hitToday / withGoal
+                && r.getGoalHitRateWeek() == (double) goalDaysHit / goalDays
+                && r.getExercisePopularity().size() == perExercise.size();
+        for (PopulationAnalytics.ExerciseUsage e : r.getExercisePopularity()) {
+            long[] exact = perExercise.get(e.getName());
+            ok &= exact != null && exact[0] == e.getUsers() && exact[1] == e.getEntries();
+        }
+        // the sketch is approximate: the median's rank among the exact values must be close to 0.5
+        double median = r.getWeeklyCaloriesSketch().quantile(0.5);
+        int below = 0;
+        while (below < weekly.length && weekly[below] <= median) below++;
+        double rankError = Math.abs((double) below / weekly.length - 0.5);
+        ok &= rankError < 0.02;
+        System.out.printf("PopulationAnalytics vs sequential (%d users, 4 threads): %s (median rank error %.4f)\n",
+                users.size(), ok ? "OK" : "MISMATCH", rankError);
+        // same result on one thread
+        System.out.println("PopulationAnalytics 1 vs 4 threads: "
+                + (PopulationBenchmark.sameReport(r, PopulationAnalytics.analyze(users, 1, today)) ? "OK" : "MISMATCH"));
+    }
 }
@@ -0,0 +1,405 @@
+package fitnesstracker;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Calories, exercise entry counts and water intake bucketed by hour, day, ISO week, month and
+ * year (local time), kept up to date as entries are added.
+ *
+ * Buckets are identified by a long index per resolution (see bucketOf), so reading a week,
+ * month or year series costs one table lookup per bucket instead of a scan over the history.
+ * Only buckets that received data are stored, in pages of PAGE consecutive bucket indices.
+ *
+ * snapshot() is O(1) and copy-on-write per page: both instances share the pages, and a write
+ * copies only the page it touches, plus (once per snapshot) each resolution's page directory,
+ * which holds one reference per page.
+ */
+public class TimeRollups {
+    public enum Resolution { HOUR, DAY, WEEK, MONTH, YEAR }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    // bucket indices per page (about ten days of hours, or eight months of days)
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE = 1 << PAGE_BITS;
+
+    private final Pages[] pages = new Pages[RESOLUTIONS.length];
+    // pages stamped with a different owner are shared with a snapshot; copy them before writing
+    private Object owner = new Object();
+    // the page directories are shared with a snapshot
+    private boolean shared;
+
+    public TimeRollups() {
+        for (int r = 0; r < pages.length; r++) pages[r] = new Pages();
+    }
+
+    private TimeRollups(Pages[] sharedPages) {
+        System.arraycopy(sharedPages, 0, pages, 0, pages.length);
+        shared = true;
+    }
+
+    public void addExercise(long timestampMillis, double kcal) {
+        if (shared) unshare();
+        long localSec = DailyTotals.localEpochSecond(timestampMillis);
+        long day = Math.floorDiv(localSec, 86400L);
+        long month = monthIndex(day);
+        slot(0, Math.floorDiv(localSec, 3600L)).addExercise(kcal);
+        slot(1, day).addExercise(kcal);
+        slot(2, weekIndex(day)).addExercise(kcal);
+        slot(3, month).addExercise(kcal);
+        slot(4, Math.floorDiv(month, 12L)).addExercise(kcal);
+    }
+
+    public void addWater(LocalDateTime timestamp, int ml) {
+        if (shared) unshare();
+        long localSec = timestamp.toEpochSecond(ZoneOffset.UTC);
+        long day = Math.floorDiv(localSec, 86400L);
+        long month = monthIndex(day);
+        slot(0, Math.floorDiv(localSec, 3600L)).addWater(ml);
+        slot(1, day).addWater(ml);
+        slot(2, weekIndex(day)).addWater(ml);
+        slot(3, month).addWater(ml);
+        slot(4, Math.floorDiv(month, 12L)).addWater(ml);
+    }
+
+    // Drop exercise data but keep water intake (the history was cleared)
+    public void clearExercise() {
+        if (shared) unshare();
+        for (Pages p : pages) {
+            for (int i = 0; i < p.pages.length; i++) {
+                if (p.pages[i] != null) p.writableAt(i, owner).clearExercise();
+            }
+        }
+    }
+
+    // Drop water data but keep exercise data (the water records were replaced)
+    public void clearWater() {
+        if (shared) unshare();
+        for (Pages p : pages) {
+            for (int i = 0; i < p.pages.length; i++) {
+                if (p.pages[i] != null) p.writableAt(i, owner).clearWater();
+            }
+        }
+    }
+
+    public void clear() {
+        for (int r = 0; r < pages.length; r++) pages[r] = new Pages();
+        shared = false;
+    }
+
+    // O(1) point-in-time copy (copy-on-write per page)
+    public TimeRollups snapshot() {
+        // a new owner: every existing page now counts as shared on both sides
+        owner = new Object();
+        shared = true;
+        return new TimeRollups(pages);
+    }
+
+    private void unshare() {
+        for (int r = 0; r < pages.length; r++) pages[r] = pages[r].copy();
+        shared = false;
+    }
+
+    public TimeRollups copy() {
+        TimeRollups c = new TimeRollups();
+        for (int r = 0; r < pages.length; r++) {
+            Pages p = pages[r].copy();
+            for (int i = 0; i < p.pages.length; i++) {
+                if (p.pages[i] != null) p.pages[i] = p.pages[i].copy(c.owner);
+            }
+            c.pages[r] = p;
+        }
+        return c;
+    }
+
+    public double getCalories(Resolution res, long bucket) {
+        Buckets b = pages[res.ordinal()].find(bucket >> PAGE_BITS);
+        int s = b == null ? -1 : b.find(bucket);
+        return s < 0 ? 0.0 : b.calories[s];
+    }
+
+    public int getEntryCount(Resolution res, long bucket) {
+        Buckets b = pages[res.ordinal()].find(bucket >> PAGE_BITS);
+        int s = b == null ? -1 : b.find(bucket);
+        return s < 0 ? 0 : b.counts[s];
+    }
+
+    public long getWaterMl(Resolution res, long bucket) {
+        Buckets b = pages[res.ordinal()].find(bucket >> PAGE_BITS);
+        int s = b == null ? -1 : b.find(bucket);
+        return s < 0 ? 0 : b.water[s];
+    }
+
+    // Calories for 'count' consecutive buckets starting at 'fromBucket'
+    public double[] getCalories(Resolution res, long fromBucket, int count) {
+        Pages p = pages[res.ordinal()];
+        double[] out = new double[count];
+        Buckets b = null;
+        for (int i = 0; i < count; i++) {
+            long key = fromBucket + i;
+            if (i == 0 || (key & (PAGE - 1)) == 0) b = p.find(key >> PAGE_BITS);
+            int s = b == null ? -1 : b.find(key);
+            if (s >= 0) out[i] = b.calories[s];
+        }
+        return out;
+    }
+
+    public int[] getEntryCounts(Resolution res, long fromBucket, int count) {
+        Pages p = pages[res.ordinal()];
+        int[] out = new int[count];
+        Buckets b = null;
+        for (int i = 0; i < count; i++) {
+            long key = fromBucket + i;
+            if (i == 0 || (key & (PAGE - 1)) == 0) b = p.find(key >> PAGE_BITS);
+            int s = b == null ? -1 : b.find(key);
+            if (s >= 0) out[i] = b.counts[s];
+        }
+        return out;
+    }
+
+    public long[] getWaterMl(Resolution res, long fromBucket, int count) {
+        Pages p = pages[res.ordinal()];
+        long[] out = new long[count];
+        Buckets b = null;
+        for (int i = 0; i < count; i++) {
+            long key = fromBucket + i;
+            if (i == 0 || (key & (PAGE - 1)) == 0) b = p.find(key >> PAGE_BITS);
+            int s = b == null ? -1 : b.find(key);
+            if (s >= 0) out[i] = b.water[s];
+        }
+        return out;
+    }
+
+    // Bucket of resolution r, in a page this instance may write
+    private Buckets slot(int r, long bucket) {
+        return pages[r].writable(bucket >> PAGE_BITS, owner).slot(bucket);
+    }
+
+    // -------- bucket indices --------
+
+    // Bucket containing the given local date-time
+    public static long bucketOf(Resolution res, LocalDateTime t) {
+        long localSec = t.toEpochSecond(ZoneOffset.UTC);
+        if (res == Resolution.HOUR) return Math.floorDiv(localSec, 3600L);
+        return bucketOfDay(res, Math.floorDiv(localSec, 86400L));
+    }
+
+    public static long bucketOf(Resolution res, LocalDate date) {
+        if (res == Resolution.HOUR) return date.toEpochDay() * 24;
+        return bucketOfDay(res, date.toEpochDay());
+    }
+
+    // Local date-time at which the bucket starts
+    public static LocalDateTime bucketStart(Resolution res, long bucket) {
+        switch (res) {
+            case HOUR: return LocalDateTime.ofEpochSecond(bucket * 3600L, 0, ZoneOffset.UTC);
+            case DAY: return LocalDate.ofEpochDay(bucket).atStartOfDay();
+            case WEEK: return LocalDate.ofEpochDay(bucket * 7 - 3).atStartOfDay();
+            case MONTH: return LocalDate.of((int) Math.floorDiv(bucket, 12L), (int) Math.floorMod(bucket, 12L) + 1, 1).atStartOfDay();
+            default: return LocalDate.of((int) bucket, 1, 1).atStartOfDay();
+        }
+    }
+
+    private static long bucketOfDay(Resolution res, long epochDay) {
+        switch (res) {
+            case DAY: return epochDay;
+            case WEEK: return weekIndex(epochDay);
+            case MONTH: return monthIndex(epochDay);
+            default: return Math.floorDiv(monthIndex(epochDay), 12L);
+        }
+    }
+
+    // ISO weeks start on Monday; epoch day 0 (1970-01-01) was a Thursday
+    private static long weekIndex(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7L);
+    }
+
+    // year * 12 + (month - 1), computed from the epoch day without creating a LocalDate
+    private static long monthIndex(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097L);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    // Open-addressing directory from page index (bucket >> PAGE_BITS) to the page's buckets
+    private static final class Pages {
+        long[] keys = new long[8];
+        // null means the slot is free
+        Buckets[] pages = new Buckets[8];
+        int size;
+        // slot of the last page written; consecutive entries usually share a page
+        int last = -1;
+
+        Buckets find(long key) {
+            int mask = keys.length - 1;
+            for (int s = Buckets.hash(key) & mask; pages[s] != null; s = (s + 1) & mask) {
+                if (keys[s] == key) return pages[s];
+            }
+            return null;
+        }
+
+        // The page, created or copied so that 'owner' may write it
+        Buckets writable(long key, Object owner) {
+            int s = last;
+            if (s < 0 || pages[s] == null || keys[s] != key) {
+                int mask = keys.length - 1;
+                s = Buckets.hash(key) & mask;
+                while (pages[s] != null && keys[s] != key) s = (s + 1) & mask;
+                if (pages[s] == null) {
+                    if ((size + 1) * 2 > keys.length) {
+                        rehash(keys.length * 2);
+                        return writable(key, owner);
+                    }
+                    keys[s] = key;
+                    pages[s] = new Buckets(owner);
+                    size++;
+                }
+                last = s;
+            }
+            return writableAt(s, owner);
+        }
+
+        // The page in directory slot s, copied first if 'owner' may not write it
+        Buckets writableAt(int s, Object owner) {
+            Buckets b = pages[s];
+            if (b.owner != owner) b = pages[s] = b.copy(owner);
+            return b;
+        }
+
+        // Copy of the directory; the pages themselves are shared
+        Pages copy() {
+            Pages c = new Pages();
+            c.keys = keys.clone();
+            c.pages = pages.clone();
+            c.size = size;
+            return c;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            Buckets[] oldPages = pages;
+            keys = new long[capacity];
+            pages = new Buckets[capacity];
+            last = -1;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldPages[i] == null) continue;
+                int s = Buckets.hash(oldKeys[i]) & mask;
+                while (pages[s] != null) s = (s + 1) & mask;
+                keys[s] = oldKeys[i];
+                pages[s] = oldPages[i];
+            }
+        }
+    }
+
+    // Open-addressing table from bucket index to the bucket's values, for the buckets of one page
+    private static final class Buckets {
+        final Object owner;
+        long[] keys = new long[16];
+        boolean[] used = new boolean[16];
+        double[] calories = new double[16];
+        int[] counts = new int[16];
+        long[] water = new long[16];
+        int size;
+        // slot of the last bucket touched; consecutive entries usually share a bucket
+        int last = -1;
+
+        Buckets(Object owner) {
+            this.owner = owner;
+        }
+
+        Buckets slot(long key) {
+            if (last >= 0 && keys[last] == key && used[last]) return this;
+            int mask = keys.length - 1;
+            int s = hash(key) & mask;
+            while (used[s] && keys[s] != key) s = (s + 1) & mask;
+            if (!used[s]) {
+                // pages are small, so they can run fuller than one big table would
+                if ((size + 1) * 4 > keys.length * 3) {
+                    rehash(keys.length * 2);
+                    return slot(key);
+                }
+                used[s] = true;
+                keys[s] = key;
+                size++;
+            }
+            last = s;
+            return this;
+        }
+
+        void addExercise(double kcal) {
+            calories[last] += kcal;
+            counts[last]++;
+        }
+
+        void addWater(int ml) {
+            water[last] += ml;
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int s = hash(key) & mask; used[s]; s = (s + 1) & mask) {
+                if (keys[s] == key) return s;
+            }
+            return -1;
+        }
+
+        void clearExercise() {
+            Arrays.fill(calories, 0.0);
+            Arrays.fill(counts, 0);
+        }
+
+        void clearWater() {
+            Arrays.fill(water, 0L);
+        }
+
+        Buckets copy(Object newOwner) {
+            Buckets c = new Buckets(newOwner);
+            c.keys = keys.clone();
+            c.used = used.clone();
+            c.calories = calories.clone();
+            c.counts = counts.clone();
+            c.water = water.clone();
+            c.size = size;
+            return c;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            double[] oldCalories = calories;
+            int[] oldCounts = counts;
+            long[] oldWater = water;
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            calories = new double[capacity];
+            counts = new int[capacity];
+            water = new long[capacity];
+            last = -1;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int s = hash(oldKeys[i]) & mask;
+                while (used[s]) s = (s + 1) & mask;
+                used[s] = true;
+                keys[s] = oldKeys[i];
+                calories[s] = oldCalories[i];
+                counts[s] = oldCounts[i];
+                water[s] = oldWater[i];
+            }
+        }
+
+        static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
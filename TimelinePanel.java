@@ -0,0 +1,269 @@
+package fitnesstracker;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Zoomable, pannable calorie timeline over a user's whole history.
+ *
+ * The view is a start day and a number of days per pixel. The aggregation level follows the zoom:
+ * daily buckets while a day is at least half a pixel wide, then weekly, then monthly, all read from
+ * the user's TimeRollups. When buckets are narrower than a bar can be drawn, they are downsampled
+ * to the min and max per pixel column, so a spike on a single day is still visible. Either way the
+ * number of buckets read and shapes drawn is bounded by the plot width, not by the number of days.
+ *
+ * Mouse wheel zooms around the pointer, dragging pans, double-click goes back to the last 90 days.
+ */
+public class TimelinePanel extends CachedChartPanel {
+    private static final double MIN_DAYS_PER_PIXEL = 1.0 / 40;
+    // about a century on a typical plot width
+    private static final double MAX_DAYS_PER_PIXEL = 40;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int INITIAL_DAYS = 90;
+    // buckets at least this wide are drawn as bars, narrower ones are downsampled per pixel column
+    private static final int MIN_BAR_PX = 3;
+    private static final int MIN_LABEL_SPACING = 80;
+    private static final int[] YEAR_STEPS = {1, 2, 5, 10, 20, 50, 100};
+
+    private static final int LEFT = 64, RIGHT = 28, TOP = 60, BOTTOM = 60;
+    private static final Color BAR_COLOR = new Color(0x7CC8B4);
+    private static final Color RANGE_COLOR = new Color(0xAEE6CE);
+    private static final Color GRID_COLOR = new Color(180, 200, 190);
+    private static final DateTimeFormatter DAY_LABEL = DateTimeFormatter.ofPattern("d MMM");
+    private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern("MMM yyyy");
+    private static final String[] LEVEL_NAMES = {"hour", "day", "week", "month", "year"};
+
+    private User user;
+    // epoch day (fractional) at the left edge of the plot; NaN until the first layout
+    private double startDay = Double.NaN;
+    private double daysPerPixel;
+
+    private int dragX;
+    private double dragStartDay;
+
+    public TimelinePanel() {
+        setBorder(javax.swing.BorderFactory.createEmptyBorder(18,18,18,18));
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragStartDay = startDay;
+            }
+
+            @Override public void mouseDragged(MouseEvent e) {
+                if (Double.isNaN(startDay)) return;
+                startDay = dragStartDay - (e.getX() - dragX) * daysPerPixel;
+                dataChanged();
+            }
+
+            @Override public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX(), Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()));
+            }
+
+            @Override public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) showRecent();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+        refresh();
+    }
+
+    // Redraw after the user's data changed (the view stays where it is)
+    public void refresh() {
+        dataChanged();
+    }
+
+    // Show the last INITIAL_DAYS days, up to today
+    public void showRecent() {
+        startDay = Double.NaN;
+        dataChanged();
+    }
+
+    // Multiply the days per pixel by factor, keeping the day under x in place
+    public void zoom(int x, double factor) {
+        if (Double.isNaN(startDay)) return;
+        double anchor = startDay + (x - LEFT) * daysPerPixel;
+        daysPerPixel = Math.max(MIN_DAYS_PER_PIXEL, Math.min(MAX_DAYS_PER_PIXEL, daysPerPixel * factor));
+        startDay = anchor - (x - LEFT) * daysPerPixel;
+        dataChanged();
+    }
+
+    @Override
+    protected void renderChart(Graphics2D g2, int w, int h) {
+        int plotW = w - LEFT - RIGHT;
+        int bottom = h - BOTTOM;
+        int plotH = bottom - TOP;
+        if (plotW <= 0 || plotH <= 0) return;
+        if (Double.isNaN(startDay)) {
+            daysPerPixel = Math.max(MIN_DAYS_PER_PIXEL, Math.min(MAX_DAYS_PER_PIXEL, (double) INITIAL_DAYS / plotW));
+            startDay = LocalDate.now().toEpochDay() + 1 - plotW * daysPerPixel;
+        }
+        TimeRollups.Resolution res = level();
+
+        g2.setColor(TEXT_COLOR);
+        title("Calories per " + LEVEL_NAMES[res.ordinal()]).draw(g2, 12, 22);
+        g2.setColor(PLOT_BACKGROUND);
+        g2.fillRoundRect(12, 40, w-24, h-88, 14, 14);
+        if (user == null) return;
+
+        // buckets overlapping the visible days
+        double endDay = startDay + plotW * daysPerPixel;
+        long first = TimeRollups.bucketOf(res, LocalDate.ofEpochDay((long) Math.floor(startDay)));
+        long last = TimeRollups.bucketOf(res, LocalDate.ofEpochDay((long) Math.floor(endDay)));
+        int count = (int) (last - first + 1);
+        // painted on the EDT, which owns the user, so the live rollups can be read directly
+        double[] totals = user.getRollups().getCalories(res, first, count);
+        double max = 0;
+        for (double t : totals) if (t > max) max = t;
+
+        drawTimeAxis(g2, plotW, bottom);
+        if (max <= 0) {
+            g2.setColor(TEXT_COLOR);
+            message("No activity in this range.").draw(g2, LEFT + 8, TOP + 24);
+            return;
+        }
+
+        // y axis: top of the scale and half way
+        g2.setColor(GRID_COLOR);
+        g2.drawLine(LEFT, TOP, LEFT + plotW, TOP);
+        g2.drawLine(LEFT, TOP + plotH / 2, LEFT + plotW, TOP + plotH / 2);
+        g2.setColor(TEXT_COLOR);
+        Text top = label(String.format("%.0f", max));
+        top.draw(g2, LEFT - 6 - top.width(), TOP + 4);
+        Text mid = label(String.format("%.0f", max / 2));
+        mid.draw(g2, LEFT - 6 - mid.width(), TOP + plotH / 2 + 4);
+
+        Shape clip = g2.getClip();
+        g2.clipRect(LEFT, TOP - 1, plotW, plotH + 2);
+        if (bucketDays(res) / daysPerPixel >= MIN_BAR_PX) {
+            drawBars(g2, res, first, totals, max, plotH, bottom);
+        } else {
+            drawMinMax(g2, res, first, totals, max, plotW, plotH, bottom);
+        }
+        g2.setClip(clip);
+    }
+
+    // One bar per bucket; buckets are at least MIN_BAR_PX wide, so there are at most plotW / MIN_BAR_PX
+    private void drawBars(Graphics2D g2, TimeRollups.Resolution res, long first, double[] totals,
+                          double max, int plotH, int bottom) {
+        g2.setColor(BAR_COLOR);
+        int x0 = toX(startDayOf(res, first));
+        for (int i = 0; i < totals.length; i++) {
+            int x1 = toX(startDayOf(res, first + i + 1));
+            if (totals[i] > 0) {
+                int barH = (int) Math.round(totals[i] / max * plotH);
+                g2.fillRect(x0 + 1, bottom - barH, Math.max(1, x1 - x0 - 1), barH);
+            }
+            x0 = x1;
+        }
+    }
+
+    // Min and max of the buckets falling in each pixel column: two shapes per column at most
+    private void drawMinMax(Graphics2D g2, TimeRollups.Resolution res, long first, double[] totals,
+                            double max, int plotW, int plotH, int bottom) {
+        double[] lo = new double[plotW];
+        double[] hi = new double[plotW];
+        boolean[] seen = new boolean[plotW];
+        for (int i = 0; i < totals.length; i++) {
+            double mid = (startDayOf(res, first + i) + startDayOf(res, first + i + 1)) / 2.0;
+            int col = (int) Math.floor((mid - startDay) / daysPerPixel);
+            if (col < 0 || col >= plotW) continue;
+            double v = totals[i];
+            if (!seen[col]) {
+                seen[col] = true;
+                lo[col] = v;
+                hi[col] = v;
+            } else {
+                if (v < lo[col]) lo[col] = v;
+                if (v > hi[col]) hi[col] = v;
+            }
+        }
+        for (int col = 0; col < plotW; col++) {
+            if (!seen[col] || hi[col] <= 0) continue;
+            int x = LEFT + col;
+            int yHi = bottom - (int) Math.round(hi[col] / max * plotH);
+            int yLo = bottom - (int) Math.round(lo[col] / max * plotH);
+            // light fill up to the minimum, dark segment for the spread between min and max
+            g2.setColor(RANGE_COLOR);
+            g2.drawLine(x, bottom, x, yLo);
+            g2.setColor(BAR_COLOR);
+            g2.drawLine(x, yLo, x, yHi);
+        }
+    }
+
+    // Date ticks along the bottom, spaced at least MIN_LABEL_SPACING pixels apart
+    private void drawTimeAxis(Graphics2D g2, int plotW, int bottom) {
+        g2.setColor(GRID_COLOR);
+        g2.drawLine(LEFT, bottom, LEFT + plotW, bottom);
+        double endDay = startDay + plotW * daysPerPixel;
+        double minDays = MIN_LABEL_SPACING * daysPerPixel;
+        if (minDays <= 1) {
+            for (long d = (long) Math.ceil(startDay); d <= endDay; d++) {
+                tick(g2, d, LocalDate.ofEpochDay(d).format(DAY_LABEL), bottom);
+            }
+        } else if (minDays <= 31) {
+            long m = TimeRollups.bucketOf(TimeRollups.Resolution.MONTH, LocalDate.ofEpochDay((long) Math.floor(startDay)));
+            for (;; m++) {
+                LocalDate start = TimeRollups.bucketStart(TimeRollups.Resolution.MONTH, m).toLocalDate();
+                if (start.toEpochDay() > endDay) break;
+                if (start.toEpochDay() >= startDay) tick(g2, start.toEpochDay(), start.format(MONTH_LABEL), bottom);
+            }
+        } else {
+            int step = YEAR_STEPS[YEAR_STEPS.length - 1];
+            for (int s : YEAR_STEPS) {
+                if (s * 365.25 >= minDays) { step = s; break; }
+            }
+            int year = LocalDate.ofEpochDay((long) Math.floor(startDay)).getYear();
+            for (int y = Math.floorDiv(year, step) * step; ; y += step) {
+                long d = LocalDate.of(y, 1, 1).toEpochDay();
+                if (d > endDay) break;
+                if (d >= startDay) tick(g2, d, String.valueOf(y), bottom);
+            }
+        }
+    }
+
+    private void tick(Graphics2D g2, double day, String text, int bottom) {
+        int x = toX(day);
+        g2.setColor(GRID_COLOR);
+        g2.drawLine(x, bottom, x, bottom + 5);
+        g2.setColor(TEXT_COLOR);
+        label(text).draw(g2, x + 3, bottom + 18);
+    }
+
+    // Finest level whose buckets are still at least half a pixel wide
+    private TimeRollups.Resolution level() {
+        if (daysPerPixel <= 2) return TimeRollups.Resolution.DAY;
+        if (daysPerPixel <= 14) return TimeRollups.Resolution.WEEK;
+        return TimeRollups.Resolution.MONTH;
+    }
+
+    private static double bucketDays(TimeRollups.Resolution res) {
+        switch (res) {
+            case DAY: return 1;
+            case WEEK: return 7;
+            default: return 28;
+        }
+    }
+
+    // First epoch day of a bucket (days and weeks without going through LocalDateTime)
+    private static long startDayOf(TimeRollups.Resolution res, long bucket) {
+        switch (res) {
+            case DAY: return bucket;
+            case WEEK: return bucket * 7 - 3;
+            default: return TimeRollups.bucketStart(res, bucket).toLocalDate().toEpochDay();
+        }
+    }
+
+    private int toX(double day) {
+        return LEFT + (int) Math.round((day - startDay) / daysPerPixel);
+    }
+}
@@ -1,9 +1,12 @@
 package fitnesstracker;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class User {
     private String name;
@@ -12,8 +15,12 @@ public class User {
     private double heightCm;
     private String sex;
 
-    // Progress tracking: daily totals (date -> calories burned that day)
-    private Map<LocalDate, Double> dailyTotals = new HashMap<>();
+    // Progress tracking: daily totals (epoch day -> calories burned that day)
+    private DailyTotals dailyTotals = new DailyTotals();
+    // Hour/day/week/month/year buckets for calories, entry counts and water
+    private TimeRollups rollups = new TimeRollups();
+    // Running per-exercise aggregates
+    private ExerciseStats exerciseStats = new ExerciseStats();
 
     // Goals
     private int dailyCalorieGoal = 0; // calories per day goal
@@ -26,8 +33,26 @@ public class User {
         private int dailyWaterGoalMl = 0;
         private int waterTodayMl = 0;
         private List<WaterRecord> waterRecords = new ArrayList<>();
+        // waterRecords is shared with a snapshot; copy it before adding
+        private boolean waterShared;
         private LocalDate lastWaterDate = LocalDate.now();
 
+    // Bumped on every profile/goal change and every history change, so derived values
+    // (GoalManager's DerivedMetrics) can tell whether they are still current
+    private int profileVersion;
+    private int historyVersion;
+    // Last DerivedMetrics computed for this user; see GoalManager.metrics
+    private DerivedMetrics metricsCache;
+
+    // Listeners notified about changes that need to be persisted (e.g. the change journal)
+    private final List<UserChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Entries and water records handed over by other threads (sync, import); see ingest().
+    // Created on the first ingest, so users that never get data from other threads do not pay for it
+    private volatile BlockingQueue<Object> ingestQueue;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile Executor ingestExecutor;
+
     public User(String name, int age, double weightKg, double heightCm, String sex) {
         this.name = name;
         this.age = age;
@@ -40,27 +65,207 @@ public class User {
         this.lastWaterDate = LocalDate.now();
     }
 
-    // Exercise history for this user
-    private java.util.List<ExerciseEntry> history = new java.util.ArrayList<>();
+    // Exercise history for this user, stored column-wise (see ExerciseHistory)
+    private ExerciseHistory history = new ExerciseHistory();
 
+    // Read-only view in timestamp order; entries are materialized on access, prefer historyCursor() for bulk reads
     public java.util.List<ExerciseEntry> getHistory() {
-        return java.util.Collections.unmodifiableList(history);
+        return history.asList();
+    }
+
+    // Entries with fromMillis <= timestamp < toMillis, oldest first (binary search, no full scan)
+    public java.util.List<ExerciseEntry> getEntriesBetween(long fromMillis, long toMillis) {
+        return history.between(fromMillis, toMillis);
+    }
+
+    // The n most recent entries, newest first
+    public java.util.List<ExerciseEntry> getLatestEntries(int n) {
+        return history.latest(n);
+    }
+
+    public int getHistorySize() {
+        return history.size();
+    }
+
+    // Index (in time order) of the first entry with timestamp >= timestampMillis; getHistorySize() if none
+    public int historyIndexAtOrAfter(long timestampMillis) {
+        return history.indexAtOrAfter(timestampMillis);
+    }
+
+    // Non-allocating iteration over the history
+    public ExerciseHistory.Cursor historyCursor() {
+        return history.cursor();
     }
 
     public void clearHistory() {
+        historyVersion++;
         history.clear();
         dailyTotals.clear();
+        rollups.clearExercise();
+        exerciseStats.clear();
+        for (UserChangeListener l : listeners) l.historyCleared(this);
+    }
+
+    // -------- Concurrent ingest --------
+    // A User is not thread-safe: it is read and changed on one owner thread (the EDT in the GUI).
+    // Other threads hand entries over through ingest(), which appends to a bounded queue; the
+    // owner thread applies them in arrival order, so no update is lost and readers never observe
+    // a half-applied entry. Listeners (journal, write-behind) run on the owner thread too.
+    // The queue holds at most INGEST_CAPACITY items, so a producer that outruns the owner thread
+    // waits instead of filling the heap, and each drain task applies at most DRAIN_BATCH items
+    // before handing the thread back, so a burst never freezes the UI for long.
+
+    static final int INGEST_CAPACITY = 16_384;
+    static final int DRAIN_BATCH = 1024;
+
+    // Executor for the owner thread; ingested data is applied there. Required before ingest()
+    public void setIngestExecutor(Executor ownerThread) {
+        this.ingestExecutor = ownerThread;
+        if (ownerThread != null && hasIngested()) scheduleDrain();
+    }
+
+    /**
+     * Hand an entry over from any thread except the owner thread; waits while the queue is full.
+     * @throws IllegalStateException if no ingest executor is set
+     */
+    public void ingest(ExerciseEntry e) throws InterruptedException {
+        if (e == null) return;
+        requireIngestExecutor();
+        ingestQueue().put(e);
+        scheduleDrain();
+    }
+
+    // Same as ingest(ExerciseEntry) for a water record
+    public void ingest(WaterRecord r) throws InterruptedException {
+        if (r == null) return;
+        requireIngestExecutor();
+        ingestQueue().put(r);
+        scheduleDrain();
+    }
+
+    // Non-blocking variant: returns false (and drops nothing already queued) if the queue is full
+    public boolean tryIngest(ExerciseEntry e) {
+        if (e == null) return true;
+        requireIngestExecutor();
+        if (!ingestQueue().offer(e)) return false;
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Apply up to 'max' ingested items; owner thread only. Called by the drain task, which
+     * reschedules itself while items remain. Returns the number applied.
+     */
+    public int drainIngested(int max) {
+        BlockingQueue<Object> q = ingestQueue;
+        if (q == null) return 0;
+        int n = 0;
+        Object o;
+        while (n < max && (o = q.poll()) != null) {
+            if (o instanceof ExerciseEntry) addExerciseEntry((ExerciseEntry) o);
+            else addWaterRecord((WaterRecord) o);
+            n++;
+        }
+        return n;
+    }
+
+    private BlockingQueue<Object> ingestQueue() {
+        BlockingQueue<Object> q = ingestQueue;
+        if (q == null) {
+            synchronized (drainScheduled) {
+                q = ingestQueue;
+                if (q == null) ingestQueue = q = new LinkedBlockingQueue<>(INGEST_CAPACITY);
+            }
+        }
+        return q;
+    }
+
+    private boolean hasIngested() {
+        BlockingQueue<Object> q = ingestQueue;
+        return q != null && !q.isEmpty();
+    }
+
+    private void requireIngestExecutor() {
+        if (ingestExecutor == null) {
+            throw new IllegalStateException("No ingest executor set for user " + name + "; call setIngestExecutor first");
+        }
+    }
+
+    // At most one drain task is queued on the owner thread at a time; it applies one batch and
+    // queues the next if more items are waiting
+    private void scheduleDrain() {
+        Executor ex = ingestExecutor;
+        if (ex == null || !drainScheduled.compareAndSet(false, true)) return;
+        ex.execute(() -> {
+            try {
+                drainIngested(DRAIN_BATCH);
+            } finally {
+                // also when an entry or a listener threw: the failed item is already taken off the
+                // queue, and a producer blocked on a full queue must not wait for a drain forever
+                drainScheduled.set(false);
+                // items added after the last poll found the flag still set; pick them up here
+                if (hasIngested()) scheduleDrain();
+            }
+        });
+    }
+
+    public void addChangeListener(UserChangeListener l) { listeners.add(l); }
+    public void removeChangeListener(UserChangeListener l) { listeners.remove(l); }
+
+    private void fireGoalsChanged() {
+        profileVersion++;
+        for (UserChangeListener l : listeners) l.goalsChanged(this);
+    }
+
+    private void fireProfileChanged() {
+        profileVersion++;
+        for (UserChangeListener l : listeners) l.profileChanged(this);
+    }
+
+    /**
+     * Point-in-time copy of this user (listeners are not copied).
+     * Safe to hand to another thread, e.g. for serialization while the original keeps changing.
+     * O(1): history and aggregates are shared copy-on-write, so nothing is copied until one side
+     * changes, and appending to the history never copies it.
+     */
+    public User snapshot() {
+        User c = new User(name, age, weightKg, heightCm, sex);
+        c.dailyCalorieGoal = dailyCalorieGoal;
+        c.weightGoalKg = weightGoalKg;
+        c.avatarPath = avatarPath;
+        c.dailyWaterGoalMl = dailyWaterGoalMl;
+        c.waterTodayMl = waterTodayMl;
+        c.lastWaterDate = lastWaterDate;
+        c.waterRecords = waterRecords;
+        c.waterShared = true;
+        waterShared = true;
+        c.history = history.snapshot();
+        c.dailyTotals = dailyTotals.snapshot();
+        c.rollups = rollups.snapshot();
+        c.exerciseStats = exerciseStats.snapshot();
+        c.profileVersion = profileVersion;
+        c.historyVersion = historyVersion;
+        c.metricsCache = metricsCache;
+        return c;
     }
 
     /**
      * Aggregate calories per exercise name (sum of calories for same exercise name)
      */
     public java.util.Map<String, Double> aggregateCaloriesPerExercise() {
-        java.util.Map<String, Double> map = new java.util.HashMap<>();
-        for (ExerciseEntry e : history) {
-            map.put(e.getExerciseName(), map.getOrDefault(e.getExerciseName(), 0.0) + e.getCalories());
-        }
-        return map;
+        return exerciseStats.caloriesByName();
+    }
+
+    /**
+     * Calories per exercise, indexed by ExerciseCatalog id (entries without a name are skipped).
+     */
+    public double[] caloriesPerExerciseId() {
+        return exerciseStats.caloriesById();
+    }
+
+    // Per-exercise totals, counts, min/max and last-performed time (read-only use)
+    public ExerciseStats getExerciseStats() {
+        return exerciseStats;
     }
 
     public String getName() {
@@ -68,7 +273,10 @@ public class User {
     }
 
     public void setName(String name) {
+        if (Objects.equals(this.name, name)) return;
+        String old = this.name;
         this.name = name;
+        for (UserChangeListener l : listeners) l.renamed(this, old);
     }
 
     public int getAge() {
@@ -77,6 +285,7 @@ public class User {
 
     public void setAge(int age) {
         this.age = age;
+        fireProfileChanged();
     }
 
     public double getWeightKg() {
@@ -85,6 +294,7 @@ public class User {
 
     public void setWeightKg(double weightKg) {
         this.weightKg = weightKg;
+        fireProfileChanged();
     }
 
     public double getHeightCm() {
@@ -93,6 +303,7 @@ public class User {
 
     public void setHeightCm(double heightCm) {
         this.heightCm = heightCm;
+        fireProfileChanged();
     }
 
     public String getSex() {
@@ -101,6 +312,16 @@ public class User {
 
     public void setSex(String sex) {
         this.sex = sex;
+        fireProfileChanged();
+    }
+
+    // Age, weight, height and sex in one change (one notification instead of four)
+    public void setProfile(int age, double weightKg, double heightCm, String sex) {
+        this.age = age;
+        this.weightKg = weightKg;
+        this.heightCm = heightCm;
+        this.sex = sex;
+        fireProfileChanged();
     }
 
     public double getHeightMeters() {
@@ -119,23 +340,41 @@ public class User {
     }
 
     // -------- Progress & Goals API --------
-    public void setDailyCalorieGoal(int kcal) { this.dailyCalorieGoal = kcal; }
+    public void setDailyCalorieGoal(int kcal) { this.dailyCalorieGoal = kcal; fireGoalsChanged(); }
     public int getDailyCalorieGoal() { return this.dailyCalorieGoal; }
 
-    public void setWeightGoalKg(double kg) { this.weightGoalKg = kg; }
+    public void setWeightGoalKg(double kg) { this.weightGoalKg = kg; fireGoalsChanged(); }
     public double getWeightGoalKg() { return this.weightGoalKg; }
 
-    public void setAvatarPath(String path) { this.avatarPath = path; }
+    // All three goals in one change (one notification instead of three)
+    public void setGoals(int dailyCalorieGoal, double weightGoalKg, int dailyWaterGoalMl) {
+        this.dailyCalorieGoal = dailyCalorieGoal;
+        this.weightGoalKg = weightGoalKg;
+        this.dailyWaterGoalMl = dailyWaterGoalMl;
+        fireGoalsChanged();
+    }
+
+    public void setAvatarPath(String path) { this.avatarPath = path; fireProfileChanged(); }
     public String getAvatarPath() { return this.avatarPath; }
 
     // -------- Water Intake API --------
     public int getDailyWaterGoalMl() { return dailyWaterGoalMl; }
-    public void setDailyWaterGoalMl(int goal) { this.dailyWaterGoalMl = goal; }
+    public void setDailyWaterGoalMl(int goal) { this.dailyWaterGoalMl = goal; fireGoalsChanged(); }
     public int getWaterTodayMl() { resetWaterIfNewDay(); return waterTodayMl; }
     public void addWater(int amount) {
+        addWaterRecord(new WaterRecord(amount, java.time.LocalDateTime.now()));
+    }
+    // Add a water record with its original timestamp (used when replaying saved changes)
+    public void addWaterRecord(WaterRecord r) {
         resetWaterIfNewDay();
-        waterTodayMl += amount;
-        waterRecords.add(new WaterRecord(amount, java.time.LocalDateTime.now()));
+        if (r.getTimestamp().toLocalDate().equals(lastWaterDate)) waterTodayMl += r.getAmount();
+        if (waterShared) {
+            waterRecords = new ArrayList<>(waterRecords);
+            waterShared = false;
+        }
+        waterRecords.add(r);
+        rollups.addWater(r.getTimestamp(), r.getAmount());
+        for (UserChangeListener l : listeners) l.waterAdded(this, r);
     }
     public void resetWaterIfNewDay() {
         LocalDate today = LocalDate.now();
@@ -144,55 +383,107 @@ public class User {
             lastWaterDate = today;
         }
     }
-    public List<WaterRecord> getWaterRecords() { return waterRecords; }
+    public List<WaterRecord> getWaterRecords() { return Collections.unmodifiableList(waterRecords); }
     public void setWaterRecords(List<WaterRecord> records) {
         this.waterRecords = records;
+        this.waterShared = false;
         // Recompute today's total
         waterTodayMl = 0;
         lastWaterDate = LocalDate.now();
+        rollups.clearWater();
         for (WaterRecord r : records) {
             if (r.getTimestamp().toLocalDate().equals(lastWaterDate)) {
                 waterTodayMl += r.getAmount();
             }
+            rollups.addWater(r.getTimestamp(), r.getAmount());
         }
     }
 
     // When adding an ExerciseEntry, also update daily totals
     public void addExerciseEntry(ExerciseEntry e) {
         if (e == null) return;
-        if (history == null) history = new ArrayList<>();
-        history.add(e);
-        LocalDate d = Instant.ofEpochMilli(e.getTimestamp()).atZone(ZoneId.systemDefault()).toLocalDate();
-        dailyTotals.put(d, dailyTotals.getOrDefault(d, 0.0) + e.getCalories());
+        addEntry(e.getExerciseId(), e.getCalories(), e.getTimestamp(), e);
+    }
+
+    // Same as addExerciseEntry, but only creates an ExerciseEntry if a listener needs one (bulk loading)
+    public void addExerciseEntry(String exerciseName, double calories, long timestamp) {
+        addEntry(ExerciseCatalog.idOf(exerciseName), calories, timestamp, null);
+    }
+
+    public void addExerciseEntry(int exerciseId, double calories, long timestamp) {
+        addEntry(exerciseId, calories, timestamp, null);
+    }
+
+    private void addEntry(int exerciseId, double calories, long timestamp, ExerciseEntry e) {
+        historyVersion++;
+        history.add(exerciseId, calories, timestamp);
+        dailyTotals.addAt(timestamp, calories);
+        rollups.addExercise(timestamp, calories);
+        exerciseStats.add(exerciseId, calories, timestamp);
+        if (listeners.isEmpty()) return;
+        if (e == null) e = new ExerciseEntry(exerciseId, calories, timestamp);
+        for (UserChangeListener l : listeners) l.entryAdded(this, e);
     }
 
     // Recompute daily totals from history (useful after clearing or bulk load)
     public void recomputeDailyTotals() {
+        historyVersion++;
         dailyTotals.clear();
-        if (history == null) return;
-        for (ExerciseEntry e : history) {
-            LocalDate d = Instant.ofEpochMilli(e.getTimestamp()).atZone(ZoneId.systemDefault()).toLocalDate();
-            dailyTotals.put(d, dailyTotals.getOrDefault(d, 0.0) + e.getCalories());
+        rollups.clear();
+        exerciseStats.clear();
+        for (WaterRecord r : waterRecords) rollups.addWater(r.getTimestamp(), r.getAmount());
+        for (ExerciseHistory.Cursor c = history.cursor(); c.next(); ) {
+            dailyTotals.addAt(c.timestamp(), c.calories());
+            rollups.addExercise(c.timestamp(), c.calories());
+            exerciseStats.add(c.exerciseId(), c.calories(), c.timestamp());
         }
     }
 
     // Get calories for a specific day
     public double getCaloriesForDate(LocalDate date) {
-        return dailyTotals.getOrDefault(date, 0.0);
+        return dailyTotals.get(date);
+    }
+
+    // Calories for a day given as epoch day (no LocalDate needed)
+    public double getCaloriesForEpochDay(long epochDay) {
+        return dailyTotals.get(epochDay);
     }
 
     // Get calories total for the 7 days ending at 'end' (inclusive)
     public double getCaloriesFor7Days(LocalDate end) {
-        double sum = 0.0;
-        for (int i = 0; i < 7; i++) {
-            LocalDate d = end.minusDays(i);
-            sum += getCaloriesForDate(d);
-        }
-        return sum;
+        return getCaloriesBetween(end.minusDays(6), end);
+    }
+
+    // Get calories total from 'start' to 'end' (both inclusive), in O(log days)
+    public double getCaloriesBetween(LocalDate start, LocalDate end) {
+        return dailyTotals.sum(start.toEpochDay(), end.toEpochDay());
+    }
+
+    // Hour/day/week/month/year aggregates (read-only use; updated as entries and water are added)
+    public TimeRollups getRollups() {
+        return rollups;
+    }
+
+    // Changes whenever age, weight, height, sex, avatar or a goal changes
+    public int getProfileVersion() {
+        return profileVersion;
+    }
+
+    // Changes whenever an entry is added or the history is cleared or recomputed
+    public int getHistoryVersion() {
+        return historyVersion;
+    }
+
+    DerivedMetrics getMetricsCache() {
+        return metricsCache;
+    }
+
+    void setMetricsCache(DerivedMetrics m) {
+        metricsCache = m;
     }
 
     // Return a copy of daily totals map
     public Map<LocalDate, Double> getDailyTotalsMap() {
-        return new HashMap<>(dailyTotals);
+        return dailyTotals.toMap();
     }
 }
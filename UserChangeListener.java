@@ -0,0 +1,22 @@
+package fitnesstracker;
+
+/**
+ * Receives notifications when a User's persisted state changes.
+ * All methods are no-ops by default so listeners only override what they need.
+ */
+public interface UserChangeListener {
+    default void entryAdded(User user, ExerciseEntry entry) { }
+
+    default void historyCleared(User user) { }
+
+    // daily calorie goal, weight goal or daily water goal changed
+    default void goalsChanged(User user) { }
+
+    default void waterAdded(User user, WaterRecord record) { }
+
+    // age, weight, height, sex or avatar changed
+    default void profileChanged(User user) { }
+
+    // name changed; user.getName() already returns the new name
+    default void renamed(User user, String oldName) { }
+}
@@ -0,0 +1,53 @@
+package fitnesstracker;
+
+/**
+ * A change to a User, as delivered by UserEventBus.
+ *
+ * One subclass per kind of change, so subscribers can pick the events they care about with
+ * instanceof and update only what that change affects.
+ */
+public abstract class UserEvent {
+    private final User user;
+
+    protected UserEvent(User user) {
+        this.user = user;
+    }
+
+    public User getUser() { return user; }
+
+    public static final class EntryAdded extends UserEvent {
+        private final ExerciseEntry entry;
+
+        public EntryAdded(User user, ExerciseEntry entry) {
+            super(user);
+            this.entry = entry;
+        }
+
+        public ExerciseEntry getEntry() { return entry; }
+    }
+
+    public static final class HistoryCleared extends UserEvent {
+        public HistoryCleared(User user) { super(user); }
+    }
+
+    // daily calorie goal, weight goal or daily water goal changed
+    public static final class GoalChanged extends UserEvent {
+        public GoalChanged(User user) { super(user); }
+    }
+
+    public static final class WaterAdded extends UserEvent {
+        private final WaterRecord record;
+
+        public WaterAdded(User user, WaterRecord record) {
+            super(user);
+            this.record = record;
+        }
+
+        public WaterRecord getRecord() { return record; }
+    }
+
+    // age, weight, height, sex or avatar changed
+    public static final class ProfileChanged extends UserEvent {
+        public ProfileChanged(User user) { super(user); }
+    }
+}
@@ -0,0 +1,69 @@
+package fitnesstracker;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Turns the change notifications of watched users into UserEvents and delivers them to
+ * subscribers on the EDT in batches.
+ *
+ * Events published between two runs of the EDT are collected and handed over as one list, so a
+ * burst of changes (a bulk import, a sync source) triggers one update per subscriber instead of
+ * one per change. Events may be published from any thread.
+ *
+ * Components that need every change as it happens (HistoryTableModel fires one row insert per
+ * entry) keep listening to the user directly.
+ */
+public class UserEventBus {
+    public interface Subscriber {
+        // Events in the order they happened; called on the EDT
+        void onEvents(List<UserEvent> batch);
+    }
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<UserEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Forwards a user's notifications to the bus
+    private final UserChangeListener relay = new UserChangeListener() {
+        @Override public void entryAdded(User user, ExerciseEntry entry) { publish(new UserEvent.EntryAdded(user, entry)); }
+        @Override public void historyCleared(User user) { publish(new UserEvent.HistoryCleared(user)); }
+        @Override public void goalsChanged(User user) { publish(new UserEvent.GoalChanged(user)); }
+        @Override public void waterAdded(User user, WaterRecord record) { publish(new UserEvent.WaterAdded(user, record)); }
+        @Override public void profileChanged(User user) { publish(new UserEvent.ProfileChanged(user)); }
+    };
+
+    public void subscribe(Subscriber s) { subscribers.add(s); }
+
+    public void unsubscribe(Subscriber s) { subscribers.remove(s); }
+
+    // Publish the user's changes on this bus until unwatch()
+    public void watch(User user) {
+        user.removeChangeListener(relay);
+        user.addChangeListener(relay);
+    }
+
+    public void unwatch(User user) {
+        user.removeChangeListener(relay);
+    }
+
+    public void publish(UserEvent event) {
+        pending.add(event);
+        if (flushScheduled.compareAndSet(false, true)) SwingUtilities.invokeLater(this::flush);
+    }
+
+    private void flush() {
+        // clear the flag first: events published from here on schedule the next batch
+        flushScheduled.set(false);
+        List<UserEvent> batch = new ArrayList<>();
+        for (UserEvent e; (e = pending.poll()) != null; ) batch.add(e);
+        if (batch.isEmpty()) return;
+        List<UserEvent> view = Collections.unmodifiableList(batch);
+        for (Subscriber s : subscribers) s.onEvents(view);
+    }
+}
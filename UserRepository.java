@@ -0,0 +1,167 @@
+package fitnesstracker;
+
+import java.util.*;
+
+/**
+ * In-memory set of users with indexed lookups.
+ *
+ * Users keep their insertion order (the order shown in the GUI and written to the data file).
+ * On top of that the repository keeps
+ *   - a hash index from id and from case-insensitive name, so find/add-or-update are O(1),
+ *   - a sorted (name, id) index for prefix search in O(log n + k).
+ * Ids are assigned by the repository when a user is added and are only valid while it runs.
+ * Several users may share a name; findByName returns the one added first.
+ *
+ * remove() is O(n) because the insertion-ordered list has to shift.
+ *
+ * Not thread-safe; like the users themselves it belongs to the owner thread (the EDT).
+ * Rename users through rename() so the name indexes stay in sync.
+ */
+public class UserRepository implements Iterable<User> {
+    private final ArrayList<User> users = new ArrayList<>();
+    private final Map<User, Integer> ids = new IdentityHashMap<>();
+    private final Map<Integer, User> byId = new HashMap<>();
+    // lower-case name -> first added user with that name
+    private final Map<String, User> byName = new HashMap<>();
+    private final TreeSet<Key> sorted = new TreeSet<>();
+    private int nextId = 1;
+
+    // Sorted index key: lower-case name, then id (so equal names stay distinct and ordered by age)
+    private static final class Key implements Comparable<Key> {
+        final String name;
+        final int id;
+        final User user;
+
+        Key(String name, int id, User user) {
+            this.name = name;
+            this.id = id;
+            this.user = user;
+        }
+
+        @Override public int compareTo(Key o) {
+            int c = name.compareTo(o.name);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    // Add a user (no-op if it is already in the repository); returns its id
+    public int add(User u) {
+        Integer existing = ids.get(u);
+        if (existing != null) return existing;
+        int id = nextId++;
+        users.add(u);
+        ids.put(u, id);
+        byId.put(id, u);
+        index(u, id);
+        return id;
+    }
+
+    public void addAll(Collection<User> batch) {
+        users.ensureCapacity(users.size() + batch.size());
+        for (User u : batch) add(u);
+    }
+
+    // Remove a user; returns its former position or -1 if it was not in the repository
+    public int remove(User u) {
+        Integer id = ids.remove(u);
+        if (id == null) return -1;
+        byId.remove(id);
+        unindex(u, id);
+        int pos = indexOf(u);
+        users.remove(pos);
+        return pos;
+    }
+
+    public void clear() {
+        users.clear();
+        ids.clear();
+        byId.clear();
+        byName.clear();
+        sorted.clear();
+    }
+
+    // Change a user's name and update the name indexes
+    public void rename(User u, String newName) {
+        Integer id = ids.get(u);
+        if (id == null) { u.setName(newName); return; }
+        unindex(u, id);
+        u.setName(newName);
+        index(u, id);
+    }
+
+    public User findById(int id) {
+        return byId.get(id);
+    }
+
+    // Repository id of the user, or -1 if it is not in the repository
+    public int idOf(User u) {
+        Integer id = ids.get(u);
+        return id != null ? id : -1;
+    }
+
+    // Case-insensitive name lookup
+    public User findByName(String name) {
+        return name == null ? null : byName.get(key(name));
+    }
+
+    // Users whose name starts with the prefix (case-insensitive), in name order, at most 'limit'
+    public List<User> findByPrefix(String prefix, int limit) {
+        List<User> out = new ArrayList<>();
+        String p = key(prefix == null ? "" : prefix);
+        for (Key k : sorted.tailSet(new Key(p, Integer.MIN_VALUE, null), true)) {
+            if (out.size() >= limit || !k.name.startsWith(p)) break;
+            out.add(k.user);
+        }
+        return out;
+    }
+
+    public User get(int position) {
+        return users.get(position);
+    }
+
+    // Position in insertion order, or -1
+    public int indexOf(User u) {
+        for (int i = 0; i < users.size(); i++) if (users.get(i) == u) return i;
+        return -1;
+    }
+
+    public boolean contains(User u) {
+        return ids.containsKey(u);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    // Read-only view in insertion order (no copy)
+    public List<User> asList() {
+        return Collections.unmodifiableList(users);
+    }
+
+    @Override
+    public Iterator<User> iterator() {
+        return asList().iterator();
+    }
+
+    private void index(User u, int id) {
+        String k = key(u.getName());
+        sorted.add(new Key(k, id, u));
+        User first = byName.get(k);
+        if (first == null || ids.get(first) > id) byName.put(k, u);
+    }
+
+    private void unindex(User u, int id) {
+        String k = key(u.getName());
+        sorted.remove(new Key(k, id, u));
+        if (byName.get(k) == u) {
+            // the next user with the same name (lowest id) takes over, if any
+            Key next = sorted.ceiling(new Key(k, Integer.MIN_VALUE, null));
+            if (next != null && next.name.equals(k)) byName.put(k, next.user);
+            else byName.remove(k);
+        }
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+}